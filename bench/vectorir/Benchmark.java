@@ -0,0 +1,604 @@
+package vectorir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Times the paths that matter over the bundled Reuters data, so a change can
+// be checked for regressions. Every benchmark runs a few warmup iterations,
+// then measurement iterations of at least half a second each, timing each
+// operation on its own with any per-operation setup left out. The fixture is
+// fixed (the same files, queries and topic every time), and each benchmark
+// reports a checksum of its result next to its timings, so the output of two
+// builds can be diffed to compare both speed and behaviour.
+//
+// The numbers are indicative only. This is a plain timing loop, not a
+// harness like JMH: every benchmark runs in the same JVM as the others, so
+// earlier ones shape the JIT and heap for later ones, and results are only
+// folded into checksums rather than consumed by a blackhole. Setup runs
+// before every operation, outside the timed region but inside the
+// iteration, so costly setup stretches an iteration well past its minimum
+// and can disturb the caches the timed part sees. Compare runs of
+// the same benchmarks on the same machine, and treat small differences as
+// noise.
+//
+// It lives in its own source root so it is not shipped with the app. Build
+// and run it alongside the sources:
+//
+//   javac -d out src/vectorir/*.java bench/vectorir/*.java
+//   java -cp out vectorir.Benchmark -data reuters-xml
+//
+// Usage: Benchmark [-data dir] [-files n] [-warmup n] [-iterations n]
+//                  [-only prefix] [-out file]
+
+public class Benchmark {
+
+	private static final long MIN_ITERATION_NANOS = 500000000L;
+	private static final String TOPIC = "acq";
+	private static final String[] TOPICS = { "earn", "acq", "money-fx", "grain", "crude", "trade", "interest",
+			"ship", "wheat", "corn" };
+	private static final int FEATURES = 50;
+	private static final String[] SERVICE_QUERIES = { "oil", "cocoa", "oil prices", "bank interest rates",
+			"wheat corn grain export", "\"crude oil\"", "\"money market\" dollar", "\"interest rates\"~2",
+			"japan trade surplus", "opec production", "gold", "coffee quota", "stock split dividend",
+			"\"federal reserve\"", "acquisition merger", "sugar" };
+	private static final int SERVICE_BATCH = 320;
+
+	public static void main(String[] args) throws Exception {
+		String data = "reuters-xml";
+		int numFiles = Integer.MAX_VALUE;
+		int warmup = 2;
+		int iterations = 5;
+		String only = "";
+		String out = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-data"))
+				data = args[i + 1];
+			else if (args[i].equals("-files"))
+				numFiles = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-warmup"))
+				warmup = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-iterations"))
+				iterations = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-only"))
+				only = args[i + 1];
+			else if (args[i].equals("-out"))
+				out = args[i + 1];
+			else
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+
+		// The fixture: the Reuters files in name order.
+		File[] found = new File(data).listFiles();
+		List<String> names = new ArrayList<String>();
+		if (found != null)
+			for (File f : found)
+				if (f.getName().matches("reut2-\\d+\\.xml"))
+					names.add(f.getPath());
+		if (names.isEmpty())
+			throw new IOException("No reut2-*.xml files in " + data);
+		String[] sorted = names.toArray(new String[names.size()]);
+		Arrays.sort(sorted);
+		String[] files = Arrays.copyOf(sorted, Math.min(numFiles, sorted.length));
+
+		PrintStream console = System.out;
+		Benchmark benchmark = new Benchmark(files, console);
+		List<String> lines = new ArrayList<String>();
+		lines.add(String.format("# java %s, %d files, %d warmup, %d iterations", System.getProperty("java.version"),
+				files.length, warmup, iterations));
+		lines.add("benchmark\tops\tmean_ms\tmin_ms\tstddev_ms\tchecksum");
+		console.println(lines.get(0));
+		console.println(lines.get(1));
+
+		// The code being measured reports progress on System.out; drop it.
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		try {
+			for (Case c : benchmark.cases()) {
+				if (!c.name.startsWith(only))
+					continue;
+				String line = c.measure(warmup, iterations);
+				lines.add(line);
+				console.println(line);
+			}
+		} finally {
+			System.setOut(console);
+		}
+
+		if (out != null) {
+			PrintWriter w = new PrintWriter(new FileWriter(out));
+			try {
+				for (String line : lines)
+					w.println(line);
+			} finally {
+				w.close();
+			}
+		}
+	}
+
+	private final String[] files;
+	private final PrintStream console;
+	private Corpus corpus;
+	private Corpus categorization;
+	private String indexFile;
+	private String[] words;
+	private String[] rankNames;
+	private double[] rankScores;
+
+	private Benchmark(String[] files, PrintStream console) {
+		this.files = files;
+		this.console = console;
+	}
+
+	// One timed operation, with optional untimed setup before each run. The
+	// checksum should only depend on the result.
+	private abstract static class Case {
+		final String name;
+
+		Case(String name) {
+			this.name = name;
+		}
+
+		void setUp() throws Exception {
+		}
+
+		abstract long run() throws Exception;
+
+		String measure(int warmup, int iterations) throws Exception {
+			long checksum = 0;
+			for (int i = 0; i < warmup; i++)
+				checksum = iterate(null);
+			List<Long> times = new ArrayList<Long>();
+			for (int i = 0; i < iterations; i++)
+				checksum = iterate(times);
+
+			double mean = 0, min = Double.MAX_VALUE, variance = 0;
+			for (long t : times) {
+				mean += t / 1e6;
+				min = Math.min(min, t / 1e6);
+			}
+			mean /= times.size();
+			for (long t : times)
+				variance += (t / 1e6 - mean) * (t / 1e6 - mean);
+			double stddev = Math.sqrt(variance / times.size());
+			return String.format("%s\t%d\t%.3f\t%.3f\t%.3f\t%016x", name, times.size(), mean, min, stddev, checksum);
+		}
+
+		// Runs the operation until the iteration has taken long enough,
+		// recording each operation's time if times is given.
+		private long iterate(List<Long> times) throws Exception {
+			long checksum = 0, elapsed = 0;
+			do {
+				setUp();
+				long start = System.nanoTime();
+				checksum = run();
+				long time = System.nanoTime() - start;
+				elapsed += time;
+				if (times != null)
+					times.add(time);
+			} while (elapsed < MIN_ITERATION_NANOS);
+			return checksum;
+		}
+	}
+
+	private List<Case> cases() {
+		List<Case> cases = new ArrayList<Case>();
+
+		cases.add(new Case("parse.index") {
+			long run() throws Exception {
+				corpus = new IndexingPipeline(1).index(files);
+				return corpus.getNumDocuments() * 31L + corpus.getNumTerms();
+			}
+		});
+
+		cases.add(new Case("stem.stemmer") {
+			void setUp() {
+				words();
+			}
+
+			long run() {
+				Stemmer stemmer = new Stemmer();
+				long checksum = 0;
+				for (String w : words()) {
+					for (int i = 0; i < w.length(); i++)
+						stemmer.add(w.charAt(i));
+					stemmer.stem();
+					checksum = 31 * checksum + stemmer.getResultLength();
+				}
+				return checksum;
+			}
+		});
+
+		cases.add(new Case("stem.cache") {
+			void setUp() {
+				words();
+			}
+
+			long run() {
+				StemCache stemmer = new StemCache();
+				long checksum = 0;
+				for (String w : words())
+					checksum = 31 * checksum + stemmer.stem(w).length();
+				return checksum;
+			}
+		});
+
+		// Weighing the whole index on 1, 2, 4... threads, up to the number of
+		// cores.
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads < cores; threads *= 2)
+			cases.add(new WeightCase(threads));
+		cases.add(new WeightCase(cores));
+
+		cases.add(new QueryCase("query.single", "oil", 0));
+		cases.add(new QueryCase("query.multi", "wheat corn grain export", 0));
+		cases.add(new QueryCase("query.multi.top100", "wheat corn grain export", 100));
+		cases.add(new QueryCase("query.phrase", "\"crude oil\" prices", 0));
+
+		// The same query under each other weighting scheme, whose posting
+		// weights are worked out as terms are read.
+		for (WeightingScheme scheme : WeightingScheme.getSchemes())
+			if (scheme != WeightingScheme.TFIDF)
+				cases.add(new QueryCase("query.multi." + scheme, "wheat corn grain export", 0, scheme));
+
+		cases.add(new QueryCase("query.rocchio", "oil prices", 0) {
+			void setUp() throws Exception {
+				super.setUp();
+				query.executeQuery();
+				TopK top = query.topK(10);
+				for (int rank = 0; rank < top.size(); rank++) {
+					if (rank < 5)
+						query.addRelevantDocs(top.getId(rank));
+					else
+						query.addNonRelevantDocs(top.getId(rank));
+				}
+			}
+
+			long run() {
+				query.rocchio();
+				return checksum(query);
+			}
+		});
+
+		// Throughput of a fixed batch of searches on 1, 2, 4... threads, up to
+		// the number of cores.
+		for (int threads = 1; threads < cores; threads *= 2)
+			cases.add(new ServiceCase(threads));
+		cases.add(new ServiceCase(cores));
+
+		// Picking the best FEATURES of every term's score, with TopK and with
+		// the TreeMap that featureSelection used to sort all of them with.
+		cases.add(new Case("rank.topk") {
+			void setUp() throws Exception {
+				rankScores();
+			}
+
+			long run() {
+				TopK top = new TopK(FEATURES);
+				for (int i = 0; i < rankScores.length; i++)
+					top.offer(i, rankScores[i]);
+				return Arrays.hashCode(top.getIds());
+			}
+		});
+
+		cases.add(new Case("rank.treemap") {
+			void setUp() throws Exception {
+				rankScores();
+			}
+
+			long run() {
+				HashMap<String, Double> scores = new HashMap<String, Double>();
+				Map<String, Integer> ids = new HashMap<String, Integer>();
+				TreeMap<String, Double> sorted = new TreeMap<String, Double>(new ValueComparator(scores, ids));
+				for (int i = 0; i < rankScores.length; i++) {
+					scores.put(rankNames[i], rankScores[i]);
+					ids.put(rankNames[i], i);
+				}
+				sorted.putAll(scores);
+				int[] best = new int[FEATURES];
+				int rank = 0;
+				for (String name : sorted.keySet()) {
+					best[rank++] = ids.get(name);
+					if (rank == FEATURES)
+						break;
+				}
+				return Arrays.hashCode(best);
+			}
+		});
+
+		cases.add(new Case("categorize.featureSelection") {
+			void setUp() throws Exception {
+				categorization();
+			}
+
+			long run() {
+				return Arrays.hashCode(categorization.featureSelection(TOPIC, FEATURES));
+			}
+		});
+
+		cases.add(new Case("categorize.featureSelection.allTopics") {
+			void setUp() throws Exception {
+				categorization();
+			}
+
+			long run() {
+				return Arrays.deepHashCode(categorization.featureSelection(TOPICS, FEATURES));
+			}
+		});
+
+		cases.add(new Case("categorize.testCategorization") {
+			String[] features;
+
+			void setUp() throws Exception {
+				if (features == null)
+					features = categorization().featureSelection(TOPIC, FEATURES);
+			}
+
+			long run() {
+				Map<Integer, Boolean> marked = categorization.testCategorization(TOPIC, features);
+				long checksum = 0;
+				for (Map.Entry<Integer, Boolean> e : marked.entrySet())
+					if (e.getValue())
+						checksum += e.getKey();
+				return checksum;
+			}
+		});
+
+		// Training and testing each kind of classifier on the ten topics.
+		cases.add(new ClassifierCase("bernoulli") {
+			Classifier newClassifier(Corpus c) {
+				return new BernoulliClassifier(c, FEATURES, 1);
+			}
+		});
+		cases.add(new ClassifierCase("multinomial") {
+			Classifier newClassifier(Corpus c) {
+				return new MultinomialClassifier(c, 0, 1);
+			}
+		});
+		cases.add(new ClassifierCase("centroid") {
+			Classifier newClassifier(Corpus c) {
+				return new CentroidClassifier(c, 1);
+			}
+		});
+
+		return cases;
+	}
+
+	// Trains a classifier on the categorization fixture, then classifies its
+	// test set.
+	private abstract class ClassifierCase extends Case {
+
+		ClassifierCase(String name) {
+			super("categorize." + name + ".allTopics");
+		}
+
+		abstract Classifier newClassifier(Corpus c);
+
+		void setUp() throws Exception {
+			categorization();
+		}
+
+		long run() {
+			Classifier classifier = newClassifier(categorization);
+			classifier.train(TOPICS);
+			long checksum = 0;
+			for (Map<Integer, Boolean> marked : classifier.classify(categorization.getTestSet()))
+				for (Map.Entry<Integer, Boolean> e : marked.entrySet())
+					if (e.getValue())
+						checksum += e.getKey();
+			return checksum;
+		}
+	}
+
+	// Runs a query against a freshly opened index, so that phrase postings
+	// cached by one operation are not reused by the next.
+	private class QueryCase extends Case {
+		final String text;
+		final int k;
+		final WeightingScheme scheme;
+		Query query;
+
+		QueryCase(String name, String text, int k) {
+			this(name, text, k, WeightingScheme.TFIDF);
+		}
+
+		QueryCase(String name, String text, int k, WeightingScheme scheme) {
+			super(name);
+			this.text = text;
+			this.k = k;
+			this.scheme = scheme;
+		}
+
+		void setUp() throws Exception {
+			MappedCorpus corpus = new MappedCorpus(indexFile());
+			corpus.setWeightingScheme(scheme);
+			query = new Query(corpus);
+			if (!query.prepareQuery(text))
+				throw new IllegalArgumentException("Bad query " + text);
+		}
+
+		long run() throws Exception {
+			if (k > 0)
+				query.executeQuery(k);
+			else
+				query.executeQuery();
+			return checksum(query);
+		}
+	}
+
+	private class WeightCase extends Case {
+		final int threads;
+
+		WeightCase(int threads) {
+			super("weight.calculateTermWeights.t" + threads);
+			this.threads = threads;
+		}
+
+		void setUp() throws Exception {
+			corpus();
+		}
+
+		long run() {
+			corpus.calculateTermWeights(threads);
+			long checksum = 0;
+			for (int id = 0; id <= corpus.getMaxDocId(); id++) {
+				Document doc = corpus.getDocument(id);
+				if (doc != null)
+					checksum = 31 * checksum + Double.doubleToLongBits(doc.getEuclideanDistance());
+			}
+			return checksum;
+		}
+	}
+
+	private class ServiceCase extends Case {
+		final int threads;
+		QueryService service;
+		List<String> batch = new ArrayList<String>();
+
+		ServiceCase(int threads) {
+			super("service.throughput.t" + threads);
+			this.threads = threads;
+			for (int i = 0; i < SERVICE_BATCH; i++)
+				batch.add(SERVICE_QUERIES[i % SERVICE_QUERIES.length]);
+		}
+
+		void setUp() throws Exception {
+			if (service == null)
+				service = new QueryService(new MappedCorpus(indexFile()), threads);
+		}
+
+		long run() throws Exception {
+			long checksum = 0;
+			for (SearchResult result : service.searchAll(batch, 10))
+				for (int rank = 0; rank < result.size(); rank++)
+					checksum = 31 * checksum + result.getId(rank);
+			return checksum;
+		}
+
+		String measure(int warmup, int iterations) throws Exception {
+			try {
+				return super.measure(warmup, iterations);
+			} finally {
+				if (service != null)
+					service.shutdown();
+			}
+		}
+	}
+
+	private static long checksum(Query query) {
+		TopK top = query.topK(10);
+		long checksum = query.getNumResults();
+		for (int rank = 0; rank < top.size(); rank++)
+			checksum = 31 * checksum + top.getId(rank);
+		return checksum;
+	}
+
+	// The fixtures are built the first time a benchmark needs them.
+
+	private Corpus corpus() throws Exception {
+		if (corpus == null) {
+			console.println("# indexing " + files.length + " files");
+			corpus = new IndexingPipeline(1).index(files);
+		}
+		return corpus;
+	}
+
+	private String indexFile() throws Exception {
+		if (indexFile == null) {
+			Corpus c = corpus();
+			c.calculateTermWeights();
+			File f = File.createTempFile("benchmark", ".idx");
+			f.deleteOnExit();
+			MappedCorpus.write(c, f.getPath());
+			indexFile = f.getPath();
+		}
+		return indexFile;
+	}
+
+	private Corpus categorization() throws Exception {
+		if (categorization == null) {
+			console.println("# indexing " + files.length + " files for categorization");
+			categorization = new IndexingPipeline(1) {
+				protected CorpusParser newParser() {
+					return new ParseForCategorization();
+				}
+			}.index(files);
+		}
+		return categorization;
+	}
+
+	// The document frequency of every term, as scores to rank: like real
+	// scores they are skewed and full of ties.
+	private double[] rankScores() throws Exception {
+		if (rankScores == null) {
+			Corpus c = corpus();
+			rankNames = new String[c.getNumTerms()];
+			rankScores = new double[c.getNumTerms()];
+			for (int id = 0; id < rankScores.length; id++) {
+				rankNames[id] = c.getTerm(id).getString();
+				rankScores[id] = c.getTerm(id).getDocFreq();
+			}
+		}
+		return rankScores;
+	}
+
+	// Orders keys by descending value, as featureSelection's TreeMap did,
+	// with its boxed lookups on every comparison. Ties go to the lower id and
+	// NaN ranks last, as in TopK, so that both cases pick the same ids.
+	private static class ValueComparator implements Comparator<String> {
+
+		private final Map<String, Double> base;
+		private final Map<String, Integer> ids;
+
+		ValueComparator(Map<String, Double> base, Map<String, Integer> ids) {
+			this.base = base;
+			this.ids = ids;
+		}
+
+		public int compare(String a, String b) {
+			double x = base.get(a), y = base.get(b);
+			if (Double.isNaN(x) != Double.isNaN(y))
+				return Double.isNaN(x) ? 1 : -1;
+			if (x < y)
+				return 1;
+			else if (x > y)
+				return -1;
+			else
+				return ids.get(a) - ids.get(b);
+		}
+	}
+
+	// Every token of the first file, in order, as a stemming workload.
+	private String[] words() {
+		if (words == null) {
+			try {
+				Corpus first = new IndexingPipeline(1).index(new String[] { files[0] });
+				List<String> list = new ArrayList<String>();
+				for (int id = 0; id <= first.getMaxDocId(); id++) {
+					Document doc = first.getDocument(id);
+					if (doc != null && doc.getBody() != null)
+						list.addAll(Arrays.asList(new Tokenizer().tokenize(doc.getBody())));
+				}
+				words = list.toArray(new String[list.size()]);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return words;
+	}
+}
@@ -9,6 +9,7 @@ import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTable;
@@ -21,24 +22,25 @@ import javax.swing.JButton;
 
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.util.HashMap;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.Vector;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JMenuBar;
-import javax.swing.event.TableModelEvent;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.JTextPane;
 
 public class App extends JFrame {
@@ -50,7 +52,7 @@ public class App extends JFrame {
 	private JButton buttonSearch;
 	private JPanel searchPanel;
 	private JTable table;
-	private CustomTableModel tableModel;
+	private ResultsTableModel tableModel;
 	private MyTableCellRenderer cellRenderer = new MyTableCellRenderer();
 	private JScrollPane tableScrollPane;
 	private JTextPane bodyTextPane;
@@ -62,17 +64,25 @@ public class App extends JFrame {
 	private JMenuItem item2_1;
 	private JMenuBar menuBar;
 	private final JFileChooser fc = new JFileChooser();
+	private static final int RESULTS_PER_PAGE = 100;
+	private static final int ROWS_PER_BATCH = 20;
 
 	// Search Components
 	private static Corpus corpus;
 	private static Query q;
 	private String queryText = "";
+	private int resultsShown = 0;
 	private HashSet<Integer> formerRelevantDocs = new HashSet<Integer>();
 	private HashSet<Integer> formerNonRelevantDocs = new HashSet<Integer>();
+	private SearchWorker worker;
 
 	// Launch the application.
 	public static void main(String[] args) {
-		new App();
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				new App();
+			}
+		});
 	}
 
 	// Create the application.
@@ -80,18 +90,8 @@ public class App extends JFrame {
 		initialize();
 		setVisible(true);
 
-		// Load the corpus into memory and instantiate a Query object.
-		setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-		try {
-			deserializeCorpus("corpus.dat");
-		} catch (FileNotFoundException e) {
-			item1_1.doClick();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		}
-		setCursor(Cursor.getDefaultCursor());
+		// Open the corpus index and instantiate a Query object.
+		openCorpus("corpus.idx");
 	}
 
 	// Initialize the contents of the frame.
@@ -117,34 +117,21 @@ public class App extends JFrame {
 		menuBar.add(menu);
 
 		item1_1 = new JMenuItem("Select Corpus", KeyEvent.VK_S);
-		item1_1.setToolTipText("Load a new corpus file into memory.");
+		item1_1.setToolTipText("Open a new corpus index.");
 		item1_1.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 
-				FileFilter filter = new FileNameExtensionFilter("Corpus Files (*.dat)", "dat");
+				FileFilter filter = new FileNameExtensionFilter("Corpus Index Files (*.idx)", "idx");
 				fc.setFileFilter(filter);
-				fc.setToolTipText("Choose a corpus to load into memory.");
+				fc.setToolTipText("Choose a corpus index to open.");
 				fc.setDialogTitle("Choose a Corpus");
 
-				setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 				int returnVal = fc.showOpenDialog(fc);
 
 				if (returnVal == JFileChooser.APPROVE_OPTION) {
-
 					File file = fc.getSelectedFile();
-					try {
-						deserializeCorpus(file.getPath());
-						formerRelevantDocs.clear();
-						formerNonRelevantDocs.clear();
-						queryText = "";
-						tableModel.fireTableChanged(new TableModelEvent(tableModel));
-					} catch (IOException e1) {
-						e1.printStackTrace();
-					} catch (ClassNotFoundException e1) {
-						e1.printStackTrace();
-					}
+					openCorpus(file.getPath());
 				}
-				setCursor(Cursor.getDefaultCursor());
 			}
 		});
 		menu.add(item1_1);
@@ -197,8 +184,7 @@ public class App extends JFrame {
 		searchPanel.add(buttonSearch);
 
 		// JTable
-		Object headers[] = { "Doc ID", "Title", "Score" };
-		tableModel = new CustomTableModel(null, headers);
+		tableModel = new ResultsTableModel();
 		table = new JTable(tableModel);
 
 		// Set the custom cell renderer for coloring of relevance feedback.
@@ -215,6 +201,8 @@ public class App extends JFrame {
 		table.addMouseListener(new java.awt.event.MouseAdapter() {
 			public void mouseClicked(java.awt.event.MouseEvent e) {
 				int row = table.rowAtPoint(e.getPoint());
+				if (row == -1)
+					return;
 				displayDocument((Integer) table.getModel().getValueAt(row, 0));
 			}
 		});
@@ -235,7 +223,10 @@ public class App extends JFrame {
 				char c = e.getKeyChar();
 				// Note that once a document marker R or NR has been used in a
 				// Rocchio expanded query, it's R/NR selection cannot be
-				// modified.
+				// modified. Nor can it while a search is running, since the
+				// search may be reading the markings.
+				if ((c == 'r' || c == 'n' || c == 'u') && searching())
+					return;
 				if (c == 'r') {
 					// Mark as relevant.
 					if (!formerRelevantDocs.contains(docId) && !formerNonRelevantDocs.contains(docId)) {
@@ -257,8 +248,12 @@ public class App extends JFrame {
 						q.removeNonRelevantDocs(docId);
 						tableModel.fireTableRowsUpdated(row, row);
 					}
-				} else if (c == 'j' && row != table.getRowCount() - 1) {
-					// Move down.
+				} else if (c == 'j') {
+					// Move down, fetching the next page of results if needed.
+					if (row == table.getRowCount() - 1 && !searching() && q.hasMoreResults(resultsShown))
+						showMoreResults();
+					if (row == table.getRowCount() - 1)
+						return;
 					table.setRowSelectionInterval(row + 1, row + 1);
 					docId = (Integer) table.getModel().getValueAt(row + 1, 0);
 				} else if (c == 'k' && row != 0) {
@@ -279,6 +274,17 @@ public class App extends JFrame {
 
 		tableScrollPane = new JScrollPane(table);
 
+		// Fetch the next page of results once the table is scrolled to the
+		// bottom.
+		tableScrollPane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+			public void adjustmentValueChanged(AdjustmentEvent e) {
+				JScrollBar bar = tableScrollPane.getVerticalScrollBar();
+				if (!e.getValueIsAdjusting() && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum()
+						&& q != null && !searching() && table.getRowCount() > 0 && q.hasMoreResults(resultsShown))
+					showMoreResults();
+			}
+		});
+
 		// Document Display
 		bodyTextPane = new JTextPane();
 		bodyTextPane.setEditable(false);
@@ -291,14 +297,44 @@ public class App extends JFrame {
 
 	}
 
-	private void deserializeCorpus(String file) throws IOException, ClassNotFoundException, FileNotFoundException {
-		// Deserialize the stored Corpus object, loading into memory.
-		System.out.println("Deserializing corpus...");
-		FileInputStream fis = new FileInputStream(file);
-		ObjectInputStream ois = new ObjectInputStream(fis);
-		corpus = (Corpus) ois.readObject();
-		System.out.println(corpus.getNumDocuments() + " documents loaded from the corpus.");
-		q = new Query(corpus);
+	// Map the corpus index on a background thread; terms and documents are
+	// read on demand. Until it is open, searches are ignored.
+	private void openCorpus(final String file) {
+		if (worker != null)
+			worker.cancel(false);
+		worker = null;
+		setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+		System.out.println("Opening corpus...");
+		new SwingWorker<Corpus, Void>() {
+			@Override
+			protected Corpus doInBackground() throws Exception {
+				return new MappedCorpus(file);
+			}
+
+			@Override
+			protected void done() {
+				setCursor(Cursor.getDefaultCursor());
+				try {
+					corpus = get();
+				} catch (InterruptedException e) {
+					return;
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof FileNotFoundException)
+						item1_1.doClick();
+					else
+						e.getCause().printStackTrace();
+					return;
+				}
+				System.out.println(corpus.getNumDocuments() + " documents in the corpus.");
+				q = new Query(corpus);
+				formerRelevantDocs.clear();
+				formerNonRelevantDocs.clear();
+				queryText = "";
+				resultsShown = 0;
+				tableModel.clear();
+				bodyTextPane.setText("");
+			}
+		}.execute();
 	}
 
 	private void displayDocument(int docId) {
@@ -309,15 +345,26 @@ public class App extends JFrame {
 		bodyTextPane.setCaretPosition(0);
 	}
 
-	@SuppressWarnings("unchecked")
+	// Whether a search or page of results is still being ranked.
+	private boolean searching() {
+		return worker != null && !worker.isDone();
+	}
+
+	// Start ranking in the background, abandoning whatever search was running
+	// before.
+	private void startSearch(SearchWorker next) {
+		if (worker != null)
+			worker.cancel(false);
+		worker = next;
+		setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+		next.execute();
+	}
+
 	private void search() {
 
 		// Make sure the corpus is loaded into memory.
-		try {
-			q.getClass();
-		} catch (Exception e) {
+		if (q == null)
 			return;
-		}
 
 		// Check to see if losing new feedback information.
 		if (!queryText.equals(textField.getText())
@@ -339,9 +386,6 @@ public class App extends JFrame {
 			return;
 		// Either a new query entirely or the same query with new feedback.
 		else {
-			long startTime = System.currentTimeMillis();
-			Map<Integer, Double> docScores = new HashMap<Integer, Double>();
-
 			// If the query is unchanged and has made it this far, it's
 			// feedback, otherwise it's a new query.
 			if (queryText.equals(textField.getText())) {
@@ -352,55 +396,186 @@ public class App extends JFrame {
 							"If there are no relevant documents in the current result set, please try a new query.");
 					return;
 				}
-				q.rocchio();
+				// A round of feedback changes the query in place, so it waits
+				// for whatever is still ranking the same query.
+				if (searching() && worker.query == q)
+					return;
+				startSearch(new SearchWorker(q, 0) {
+					@Override
+					protected void evaluate() {
+						query.rocchio();
+					}
+				});
 			} else {
-				queryText = textField.getText();
-				q = new Query(corpus);
-				if (q.prepareQuery(queryText))
-					q.executeQuery();
-				else
+				Query next = new Query(corpus);
+				if (!next.prepareQuery(textField.getText()))
 					return;
+				queryText = textField.getText();
+				startSearch(new SearchWorker(next, 0) {
+					@Override
+					protected void evaluate() {
+						query.executeQuery(RESULTS_PER_PAGE);
+					}
+				});
 			}
-			docScores = q.getDocScores();
+		}
+	}
 
-			// Output the documents in order of similarity to the query.
-			long stopTime = System.currentTimeMillis();
-			System.out.println(docScores.size() + " results (" + (stopTime - startTime) / 1000.0 + " seconds)");
+	// Append the next page of ranked results to the table.
+	private void showMoreResults() {
+		startSearch(new SearchWorker(q, resultsShown));
+	}
+
+	// Ranks a page of results for a query off the event dispatch thread,
+	// first evaluating the query if it is a new search, and streams the rows
+	// into the table in batches. A worker that has been replaced by a newer
+	// search stops publishing, and anything it already published is ignored.
+	private class SearchWorker extends SwingWorker<Void, ResultRow> {
+
+		protected final Query query;
+		private final int from;
+		private int to;
+		private long millis;
+		private boolean shown = false;
+		private boolean displayed = false;
+
+		SearchWorker(Query query, int from) {
+			this.query = query;
+			this.from = from;
+		}
 
-			// Populate the table.
-			tableModel.getDataVector().removeAllElements();
-			for (Map.Entry<Integer, Double> item : docScores.entrySet()) {
+		// Evaluate the query before ranking; paging needs no evaluation.
+		protected void evaluate() {
+		}
+
+		@Override
+		protected Void doInBackground() {
+			long startTime = System.currentTimeMillis();
+			evaluate();
+			TopK top = query.topK(from + RESULTS_PER_PAGE);
+			millis = System.currentTimeMillis() - startTime;
+			to = Math.min(from + RESULTS_PER_PAGE, top.size());
+
+			List<ResultRow> batch = new ArrayList<ResultRow>(ROWS_PER_BATCH);
+			for (int rank = from; rank < to && !isCancelled(); rank++) {
+				int docId = top.getId(rank);
 				// No longer display documents marked as non-relevant.
-				if (!q.getNonRelevantDocs().contains(item.getKey())) {
-					Document doc = corpus.getDocument(item.getKey());
-					Object[] rowData = { item.getKey(), doc.getTitle(), item.getValue() };
-					tableModel.addRow(rowData);
+				if (!query.getNonRelevantDocs().contains(docId))
+					batch.add(new ResultRow(docId, top.getScore(rank)));
+				if (batch.size() == ROWS_PER_BATCH || rank == to - 1) {
+					publish(batch.toArray(new ResultRow[batch.size()]));
+					batch.clear();
 				}
 			}
-			tableModel.fireTableChanged(new TableModelEvent(tableModel));
-			if (docScores.size() > 0)
+			return null;
+		}
+
+		@Override
+		protected void process(List<ResultRow> rows) {
+			if (worker != this)
+				return;
+			show();
+			tableModel.addRows(rows);
+			if (from == 0 && !displayed && table.getRowCount() > 0) {
+				displayed = true;
 				displayDocument((Integer) table.getModel().getValueAt(0, 0));
-			else
-				bodyTextPane.setText("");
+			}
+		}
+
+		// Swap in the new result set once its first rows are ready.
+		private void show() {
+			if (shown || from > 0)
+				return;
+			shown = true;
+			q = query;
+			tableModel.clear();
+			bodyTextPane.setText("");
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		protected void done() {
+			if (worker != this)
+				return;
+			setCursor(Cursor.getDefaultCursor());
+			if (isCancelled())
+				return;
+			try {
+				get();
+			} catch (InterruptedException e) {
+				return;
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				return;
+			}
+			resultsShown = to;
+			if (from > 0)
+				return;
+
+			// Rows may still be on their way; they display the first
+			// document when they arrive.
+			show();
+			System.out.println(query.getNumResults() + " results (" + millis / 1000.0 + " seconds)");
 
 			// Store the feedback to test for changes later.
-			formerRelevantDocs = (HashSet<Integer>) q.getRelevantDocs().clone();
-			formerNonRelevantDocs = (HashSet<Integer>) q.getNonRelevantDocs().clone();
+			formerRelevantDocs = (HashSet<Integer>) query.getRelevantDocs().clone();
+			formerNonRelevantDocs = (HashSet<Integer>) query.getNonRelevantDocs().clone();
+		}
+	}
+
+	// One ranked document. Its title is only read from the corpus once the
+	// row is displayed.
+	static class ResultRow {
+
+		final int docId;
+		final double score;
+		String title;
+
+		ResultRow(int docId, double score) {
+			this.docId = docId;
+			this.score = score;
 		}
 	}
 
-	// Makes all cells not editable and identifies the types of each column.
-	class CustomTableModel extends DefaultTableModel {
+	// Holds the ranked ids and scores, fetching a document's title only when
+	// the table asks for it, which it does just for the rows in view. Makes
+	// all cells not editable and identifies the types of each column.
+	class ResultsTableModel extends AbstractTableModel {
 
 		private static final long serialVersionUID = -4979601734379067486L;
+		private final String[] headers = { "Doc ID", "Title", "Score" };
+		private final Class<?>[] types = { Integer.class, String.class, Double.class };
+		private final List<ResultRow> rows = new ArrayList<ResultRow>();
 
-		public CustomTableModel(Object rowData[][], Object columnNames[]) {
-			super(rowData, columnNames);
+		public void clear() {
+			rows.clear();
+			fireTableDataChanged();
 		}
 
-		public Class<? extends Object> getColumnClass(int col) {
-			Vector<?> v = (Vector<?>) dataVector.elementAt(0);
-			return v.elementAt(col).getClass();
+		public void addRows(List<ResultRow> more) {
+			if (more.isEmpty())
+				return;
+			int first = rows.size();
+			rows.addAll(more);
+			fireTableRowsInserted(first, rows.size() - 1);
+		}
+
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		public int getColumnCount() {
+			return headers.length;
+		}
+
+		@Override
+		public String getColumnName(int col) {
+			return headers[col];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int col) {
+			return types[col];
 		}
 
 		@Override
@@ -408,12 +583,32 @@ public class App extends JFrame {
 			return false;
 		}
 
+		public Object getValueAt(int row, int col) {
+			ResultRow r = rows.get(row);
+			if (col == 0)
+				return r.docId;
+			if (col == 2)
+				return r.score;
+			if (r.title == null)
+				r.title = corpus.getDocument(r.docId).getTitle();
+			return r.title;
+		}
 	}
 
 	// Make relevant docs green and non-relevant docs red.
 	static class MyTableCellRenderer extends DefaultTableCellRenderer {
 
 		private static final long serialVersionUID = 5464571011029151373L;
+		private static final DecimalFormat twoDForm = new DecimalFormat("#.##");
+
+		// Scores are kept at full precision and only rounded for display.
+		@Override
+		protected void setValue(Object value) {
+			if (value instanceof Double)
+				super.setValue(twoDForm.format(value));
+			else
+				super.setValue(value);
+		}
 
 		@Override
 		public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
@@ -0,0 +1,96 @@
+package vectorir;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Bernoulli naive Bayes over the k features of each topic with the highest
+// mutual information. The features of every topic are selected in one pass
+// over the vocabulary before the topics are trained. A topic's model is
+// reduced to primitive arrays of log odds: the score a document gets when
+// none of the features are present, and how much each feature adds when it
+// is. Scoring walks each feature's postings once, so the work is
+// proportional to how often the features occur rather than to the number of
+// documents times the number of features.
+
+public class BernoulliClassifier extends Classifier {
+
+	private final int numFeatures;
+	private int[][] features;
+	private BitSet training;
+	private double[] absentScore;
+	private double[][] presentWeight;
+
+	public BernoulliClassifier(Corpus corpus, int numFeatures, int threads) {
+		super(corpus, threads);
+		this.numFeatures = numFeatures;
+	}
+
+	public String getName() {
+		return "bernoulli";
+	}
+
+	// The terms chosen for a topic, best first.
+	public String[] getFeatures(int topic) {
+		String[] strings = new String[features[topic].length];
+		for (int f = 0; f < strings.length; f++)
+			strings[f] = corpus.getTerm(features[topic][f]).getString();
+		return strings;
+	}
+
+	protected void prepare() {
+		features = corpus.selectFeatures(topics, numFeatures);
+		training = new BitSet(corpus.getMaxDocId() + 1);
+		for (Integer id : corpus.getTrainingSet())
+			training.set(id);
+		absentScore = new double[topics.length];
+		presentWeight = new double[topics.length][];
+	}
+
+	protected void trainTopic(int t) {
+		int n = corpus.getTrainingSet().size();
+		BitSet inClass = new BitSet(corpus.getMaxDocId() + 1);
+		for (Integer id : corpus.getTrainingSet())
+			if (corpus.getDocument(id).getTopics().contains(topics[t]))
+				inClass.set(id);
+		int nc = inClass.cardinality();
+
+		// The log odds of the topic before looking at any feature, plus the
+		// evidence of each feature being absent.
+		double score = Math.log(nc / (double) n) - Math.log((n - nc) / (double) n);
+		double[] weights = new double[features[t].length];
+		for (int f = 0; f < weights.length; f++) {
+			// Count the training docs, in class and not, containing the term.
+			int nct_c = 0, nct_cbar = 0;
+			PostingsIterator postings = corpus.getTerm(features[t][f]).iterator();
+			for (int d = postings.nextDoc(); d != PostingsIterator.NO_MORE_DOCS; d = postings.nextDoc()) {
+				if (inClass.get(d))
+					nct_c++;
+				else if (training.get(d))
+					nct_cbar++;
+			}
+			double condProb_c = (nct_c + 1) / (double) (nc + 2);
+			double condProb_cbar = (nct_cbar + 1) / (double) ((n - nc) + 2);
+			double absent = Math.log(1 - condProb_c) - Math.log(1 - condProb_cbar);
+			score += absent;
+			weights[f] = Math.log(condProb_c) - Math.log(condProb_cbar) - absent;
+		}
+		absentScore[t] = score;
+		presentWeight[t] = weights;
+	}
+
+	public CategoryModel toModel() {
+		return CategoryModel.fromTermIds(CategoryModel.PRESENCE, corpus, topics, absentScore, features, presentWeight);
+	}
+
+	protected void scoreTopic(int t, DocumentVectors docs, double[] scores) {
+		Arrays.fill(scores, absentScore[t]);
+		for (int f = 0; f < features[t].length; f++) {
+			PostingsIterator postings = corpus.getTerm(features[t][f]).iterator();
+			for (int d = postings.nextDoc(); d != PostingsIterator.NO_MORE_DOCS; d = postings.nextDoc()) {
+				int i = docs.indexOf(d);
+				if (i >= 0)
+					scores[i] += presentWeight[t][f];
+			}
+		}
+	}
+}
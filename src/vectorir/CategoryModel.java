@@ -0,0 +1,279 @@
+package vectorir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A trained Classifier reduced to what classifying needs, so that it can be
+// saved, loaded again without the training corpus, and applied to new text.
+// Every classifier here is linear: a topic's score is its bias plus the sum,
+// over the model's terms found in a document, of the term's value in the
+// document times its weight in the topic. The value is 1 for a term that is
+// present (Bernoulli), its frequency (multinomial), or its tf-idf weight in
+// the unit-length document vector (centroid). Text is tokenized, stop words
+// dropped and the rest stemmed exactly as ParseForCategorization does.
+//
+// File layout, written with DataOutputStream:
+//
+// header      int MAGIC, int VERSION, int value kind
+// terms       int #terms, per term: UTF string, double idf
+// topics      int #topics, per topic: UTF name, double bias, int #weights,
+//             (int term index, double weight) pairs
+//
+// Usage: CategoryModel model file ...    prints the topics of each text file
+
+public class CategoryModel {
+
+	public static void main(String[] args) throws Exception {
+		CategoryModel model = read(args[0]);
+		for (int i = 1; i < args.length; i++) {
+			StringBuilder text = new StringBuilder();
+			FileReader r = new FileReader(args[i]);
+			try {
+				char[] buffer = new char[4096];
+				for (int n; (n = r.read(buffer)) > 0;)
+					text.append(buffer, 0, n);
+			} finally {
+				r.close();
+			}
+			long start = System.nanoTime();
+			List<String> topics = model.classify(text.toString());
+			long nanos = System.nanoTime() - start;
+			System.out.printf("%s: %s (%.3f ms)%n", args[i], topics, nanos / 1e6);
+		}
+	}
+
+	static final int MAGIC = 0x56495243;
+	static final int VERSION = 1;
+
+	// How a term's value in a document is found.
+	public static final int PRESENCE = 0;
+	public static final int FREQUENCY = 1;
+	public static final int TFIDF = 2;
+
+	private final int kind;
+	private final String[] topics;
+	private final double[] bias;
+	private final String[] terms;
+	private final double[] idf;
+	private final int[][] termIndexes;
+	private final double[][] weights;
+
+	// For each term, the topics that weigh it and their weights.
+	private final Map<String, Integer> termIndex = new HashMap<String, Integer>();
+	private final int[][] termTopics;
+	private final double[][] termWeights;
+
+	// Stop words and stemming, as the parsers use them.
+	private final Corpus analyzer = new Corpus();
+
+	// idf is only needed for TFIDF models, and holds an entry per term.
+	CategoryModel(int kind, String[] topics, double[] bias, String[] terms, double[] idf, int[][] termIndexes,
+			double[][] weights) {
+		this.kind = kind;
+		this.topics = topics;
+		this.bias = bias;
+		this.terms = terms;
+		this.idf = idf;
+		this.termIndexes = termIndexes;
+		this.weights = weights;
+
+		for (int i = 0; i < terms.length; i++)
+			termIndex.put(terms[i], i);
+		int[] counts = new int[terms.length];
+		for (int[] indexes : termIndexes)
+			for (int i : indexes)
+				counts[i]++;
+		termTopics = new int[terms.length][];
+		termWeights = new double[terms.length][];
+		for (int i = 0; i < terms.length; i++) {
+			termTopics[i] = new int[counts[i]];
+			termWeights[i] = new double[counts[i]];
+		}
+		Arrays.fill(counts, 0);
+		for (int t = 0; t < topics.length; t++)
+			for (int w = 0; w < termIndexes[t].length; w++) {
+				int i = termIndexes[t][w];
+				termTopics[i][counts[i]] = t;
+				termWeights[i][counts[i]++] = weights[t][w];
+			}
+	}
+
+	// Build a model from each topic's weights on a corpus's term ids,
+	// keeping only the terms some topic weighs, or every term if they all
+	// need an idf.
+	static CategoryModel fromTermIds(int kind, Corpus corpus, String[] topics, double[] bias, int[][] termIds,
+			double[][] weights) {
+		int numTerms = corpus.getNumTerms();
+		boolean[] used = new boolean[numTerms];
+		Arrays.fill(used, kind == TFIDF);
+		for (int[] ids : termIds)
+			for (int id : ids)
+				used[id] = true;
+		int[] index = new int[numTerms];
+		int numUsed = 0;
+		for (int id = 0; id < numTerms; id++)
+			if (used[id])
+				index[id] = numUsed++;
+
+		String[] terms = new String[numUsed];
+		double[] idf = new double[numUsed];
+		for (int id = 0; id < numTerms; id++)
+			if (used[id]) {
+				terms[index[id]] = corpus.getTerm(id).getString();
+				idf[index[id]] = Corpus.idf(corpus.getNumDocuments(), corpus.getTerm(id).getDocFreq());
+			}
+		int[][] termIndexes = new int[topics.length][];
+		for (int t = 0; t < topics.length; t++) {
+			termIndexes[t] = new int[termIds[t].length];
+			for (int w = 0; w < termIds[t].length; w++)
+				termIndexes[t][w] = index[termIds[t][w]];
+		}
+		return new CategoryModel(kind, topics.clone(), bias.clone(), terms, idf, termIndexes, weights);
+	}
+
+	public String[] getTopics() {
+		return topics.clone();
+	}
+
+	public int getNumTerms() {
+		return terms.length;
+	}
+
+	// The score of the text for each topic; above zero puts it in the topic.
+	public double[] score(String text) {
+		// Count the stems of the text.
+		Tokenizer tokenizer = new Tokenizer();
+		tokenizer.feed(text);
+		tokenizer.finish();
+		Map<String, int[]> freqs = new HashMap<String, int[]>();
+		StemCache stemmer = analyzer.getStemCache();
+		char[] chars = tokenizer.buffer();
+		int maxFreq = 0;
+		for (int i = 0; i < tokenizer.size(); i++) {
+			if (analyzer.stopWord(chars, tokenizer.start(i), tokenizer.length(i)))
+				continue;
+			String stem;
+			synchronized (stemmer) {
+				stem = stemmer.stem(chars, tokenizer.start(i), tokenizer.length(i));
+			}
+			int[] freq = freqs.get(stem);
+			if (freq == null)
+				freqs.put(stem, freq = new int[1]);
+			maxFreq = Math.max(maxFreq, ++freq[0]);
+		}
+
+		// The value of each of the model's terms in the text.
+		int n = 0;
+		int[] found = new int[freqs.size()];
+		double[] values = new double[freqs.size()];
+		double length = 0;
+		for (Map.Entry<String, int[]> e : freqs.entrySet()) {
+			Integer i = termIndex.get(e.getKey());
+			if (i == null)
+				continue;
+			int freq = e.getValue()[0];
+			double value = kind == PRESENCE ? 1 : freq;
+			if (kind == TFIDF) {
+				// As Corpus.tfidf, with the idf of the training corpus.
+				value = Corpus.tf(freq, maxFreq) * idf[i];
+				length += value * value;
+			}
+			found[n] = i;
+			values[n++] = value;
+		}
+		if (kind == TFIDF && length > 0)
+			for (int v = 0; v < n; v++)
+				values[v] /= Math.sqrt(length);
+
+		double[] scores = bias.clone();
+		for (int v = 0; v < n; v++) {
+			int[] ts = termTopics[found[v]];
+			double[] ws = termWeights[found[v]];
+			for (int w = 0; w < ts.length; w++)
+				scores[ts[w]] += values[v] * ws[w];
+		}
+		return scores;
+	}
+
+	// The topics the text belongs to, in the model's order.
+	public List<String> classify(String text) {
+		double[] scores = score(text);
+		List<String> in = new ArrayList<String>();
+		for (int t = 0; t < topics.length; t++)
+			if (scores[t] > 0)
+				in.add(topics[t]);
+		return in;
+	}
+
+	public void write(String file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(kind);
+			out.writeInt(terms.length);
+			for (int i = 0; i < terms.length; i++) {
+				out.writeUTF(terms[i]);
+				out.writeDouble(idf[i]);
+			}
+			out.writeInt(topics.length);
+			for (int t = 0; t < topics.length; t++) {
+				out.writeUTF(topics[t]);
+				out.writeDouble(bias[t]);
+				out.writeInt(termIndexes[t].length);
+				for (int w = 0; w < termIndexes[t].length; w++) {
+					out.writeInt(termIndexes[t][w]);
+					out.writeDouble(weights[t][w]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static CategoryModel read(String file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a category model");
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException(file + " is version " + version + ", expected " + VERSION);
+			int kind = in.readInt();
+			String[] terms = new String[in.readInt()];
+			double[] idf = new double[terms.length];
+			for (int i = 0; i < terms.length; i++) {
+				terms[i] = in.readUTF();
+				idf[i] = in.readDouble();
+			}
+			String[] topics = new String[in.readInt()];
+			double[] bias = new double[topics.length];
+			int[][] termIndexes = new int[topics.length][];
+			double[][] weights = new double[topics.length][];
+			for (int t = 0; t < topics.length; t++) {
+				topics[t] = in.readUTF();
+				bias[t] = in.readDouble();
+				termIndexes[t] = new int[in.readInt()];
+				weights[t] = new double[termIndexes[t].length];
+				for (int w = 0; w < termIndexes[t].length; w++) {
+					termIndexes[t][w] = in.readInt();
+					weights[t][w] = in.readDouble();
+				}
+			}
+			return new CategoryModel(kind, topics, bias, terms, idf, termIndexes, weights);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package vectorir;
+
+// Rocchio classification: each topic, and the rest of the training set, is
+// represented by the centroid of its documents' length-normalized tf-idf
+// vectors, and a document goes to whichever centroid is nearer. Since the
+// documents have unit length, comparing the squared distances to the two
+// centroids reduces to a dot product with their difference, minus half the
+// difference of their squared lengths, so only the document's own terms are
+// visited.
+
+public class CentroidClassifier extends LinearClassifier {
+
+	public CentroidClassifier(Corpus corpus, int threads) {
+		super(corpus, threads);
+	}
+
+	public String getName() {
+		return "centroid";
+	}
+
+	protected int valueKind() {
+		return CategoryModel.TFIDF;
+	}
+
+	// Tf-idf weights, as calculateTermWeights computes them, divided by the
+	// length of each document's vector.
+	protected double[] values(DocumentVectors docs) {
+		double[] values = new double[docs.entries()];
+		for (int i = 0; i < docs.size(); i++) {
+			int maxFreq = corpus.getMaxTermFreq(docs.getDocId(i));
+			double length = 0;
+			for (int e = docs.offset(i); e < docs.offset(i + 1); e++) {
+				int docFreq = corpus.getTerm(docs.termIdAt(e)).getDocFreq();
+				values[e] = corpus.tfidf(docs.freqAt(e), maxFreq, docFreq);
+				length += values[e] * values[e];
+			}
+			length = Math.sqrt(length);
+			if (length > 0)
+				for (int e = docs.offset(i); e < docs.offset(i + 1); e++)
+					values[e] /= length;
+		}
+		return values;
+	}
+
+	protected void train(int t, int nc, int n, double[] classSums) {
+		if (nc == 0) {
+			// No centroid to be near.
+			bias[t] = Double.NEGATIVE_INFINITY;
+			weights[t] = new double[classSums.length];
+			return;
+		}
+		double[] w = new double[classSums.length];
+		double lengthIn = 0, lengthOut = 0;
+		for (int id = 0; id < w.length; id++) {
+			double in = classSums[id] / nc;
+			double out = n > nc ? (totals[id] - classSums[id]) / (n - nc) : 0;
+			w[id] = in - out;
+			lengthIn += in * in;
+			lengthOut += out * out;
+		}
+		bias[t] = -(lengthIn - lengthOut) / 2;
+		weights[t] = w;
+	}
+}
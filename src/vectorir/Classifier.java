@@ -0,0 +1,141 @@
+package vectorir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// A binary classifier for each of a set of topics, trained on the training
+// split of a Corpus. Subclasses say how to train and score one topic; this
+// class runs the topics in parallel, one task each, and times them. A score
+// above zero puts a document in the topic.
+
+public abstract class Classifier {
+
+	protected final Corpus corpus;
+	private final int threads;
+	protected String[] topics = new String[0];
+	private long prepareNanos;
+	private long[] trainNanos = new long[0];
+	private long[] classifyNanos = new long[0];
+
+	protected Classifier(Corpus corpus, int threads) {
+		this.corpus = corpus;
+		this.threads = threads;
+	}
+
+	public abstract String getName();
+
+	public String[] getTopics() {
+		return topics;
+	}
+
+	public void train(String[] topics) {
+		this.topics = topics.clone();
+		trainNanos = new long[topics.length];
+		classifyNanos = new long[topics.length];
+		long start = System.nanoTime();
+		prepare();
+		prepareNanos = System.nanoTime() - start;
+		forEachTopic(new TopicTask() {
+			void run(int t) {
+				long start = System.nanoTime();
+				trainTopic(t);
+				trainNanos[t] = System.nanoTime() - start;
+			}
+		});
+	}
+
+	// Work shared by all the topics, done once before any topic is trained.
+	protected void prepare() {
+	}
+
+	protected abstract void trainTopic(int topic);
+
+	// The trained topics as a model that can be saved and used without the
+	// corpus.
+	public abstract CategoryModel toModel();
+
+	// Fill in the score of each of the documents for one topic.
+	protected abstract void scoreTopic(int topic, DocumentVectors docs, double[] scores);
+
+	// The scores of each document for each topic, indexed by topic and then
+	// by the document's position in docs.
+	public double[][] score(List<Integer> docs) {
+		final DocumentVectors vectors = new DocumentVectors(corpus, docs);
+		final double[][] scores = new double[topics.length][docs.size()];
+		forEachTopic(new TopicTask() {
+			void run(int t) {
+				long start = System.nanoTime();
+				scoreTopic(t, vectors, scores[t]);
+				classifyNanos[t] = System.nanoTime() - start;
+			}
+		});
+		return scores;
+	}
+
+	// Marks each document as in or out of each topic, one map per topic.
+	public List<Map<Integer, Boolean>> classify(List<Integer> docs) {
+		double[][] scores = score(docs);
+		List<Map<Integer, Boolean>> marked = new ArrayList<Map<Integer, Boolean>>(topics.length);
+		for (int t = 0; t < topics.length; t++) {
+			Map<Integer, Boolean> m = new HashMap<Integer, Boolean>();
+			for (int i = 0; i < docs.size(); i++)
+				m.put(docs.get(i), scores[t][i] > 0);
+			marked.add(m);
+		}
+		return marked;
+	}
+
+	// How long the work shared by all topics took.
+	public long getPrepareNanos() {
+		return prepareNanos;
+	}
+
+	// How long training a topic took, after the shared work.
+	public long getTrainNanos(int topic) {
+		return trainNanos[topic];
+	}
+
+	// How long the last call to score or classify spent on a topic.
+	public long getClassifyNanos(int topic) {
+		return classifyNanos[topic];
+	}
+
+	private abstract static class TopicTask {
+		abstract void run(int topic);
+	}
+
+	// Run the task for every topic on the pool, returning once all are done.
+	private void forEachTopic(final TopicTask task) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(topics.length);
+			for (int t = 0; t < topics.length; t++) {
+				final int topic = t;
+				futures.add(pool.submit(new Callable<Void>() {
+					public Void call() {
+						task.run(topic);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -2,21 +2,33 @@ package vectorir;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import vectorir.Term.TermDoc;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Corpus implements java.io.Serializable {
 
 	private static final long serialVersionUID = 5726961619157084200L;
 	private Map<Integer, Document> documents = new HashMap<Integer, Document>();
 	private Map<String, Term> terms = new HashMap<String, Term>();
+	private ArrayList<Term> termsById = new ArrayList<Term>();
+	private transient StemCache stemCache;
+	private transient LruCache<String, Term> phraseCache;
+	private transient WeightingScheme scheme;
+	private transient DocumentStats stats;
+	private boolean weighed = false;
+	private boolean frozen = false;
 	private ArrayList<Integer> trainingSet = new ArrayList<Integer>();
 	private ArrayList<Integer> testSet = new ArrayList<Integer>();
+	private int maxDocId = 0;
+	private static final int PHRASE_CACHE_SIZE = 256;
 
 	// Documents Methods
 	public Document getDocument(Integer key) {
@@ -24,13 +36,34 @@ public class Corpus implements java.io.Serializable {
 	}
 
 	public void addDocument(Document doc) {
+		checkWritable();
 		documents.put(doc.getId(), doc);
+		if (doc.getId() > maxDocId)
+			maxDocId = doc.getId();
 	}
 
 	public int getNumDocuments() {
 		return documents.size();
 	}
 
+	public boolean containsDocument(int docId) {
+		return documents.containsKey(docId);
+	}
+
+	public int getMaxDocId() {
+		return maxDocId;
+	}
+
+	// The largest term frequency in a document and its Euclidean length,
+	// which are all that weighting a posting needs from it.
+	public int getMaxTermFreq(int docId) {
+		return getDocument(docId).getMaxTermFreq();
+	}
+
+	public double getDocumentLength(int docId) {
+		return getDocument(docId).getEuclideanDistance();
+	}
+
 	// Terms Methods
 	public Term getTerm(String key) {
 		if (terms.containsKey(key))
@@ -39,8 +72,46 @@ public class Corpus implements java.io.Serializable {
 			return new Term(0);
 	}
 
+	// The number of documents a term is found in, without reading its
+	// postings where that can be avoided.
+	public int getDocFreq(String key) {
+		return getTerm(key).getDocFreq();
+	}
+
+	// Terms are also numbered densely in the order they are added.
+	public Term getTerm(int id) {
+		return termsById.get(id);
+	}
+
+	// The string of a term, without decoding anything else about it.
+	public String getTermString(int id) {
+		return getTerm(id).getString();
+	}
+
+	public int getTermId(String key) {
+		Term t = terms.get(key);
+		return t == null ? -1 : t.getId();
+	}
+
+	// Fold in the postings of a term from documents that have none in this
+	// corpus yet.
+	void addPostings(Term t) {
+		Term existing = terms.get(t.getString());
+		if (existing == null)
+			putTerm(t);
+		else
+			existing.merge(t);
+	}
+
 	public void addTerm(String term, Document doc, int pos) {
-		terms.put(term, new Term(term, doc, pos));
+		putTerm(new Term(term, doc, pos));
+	}
+
+	private void putTerm(Term t) {
+		checkWritable();
+		t.setId(getNumTerms());
+		terms.put(t.getString(), t);
+		termsById.add(t);
 	}
 
 	public int getNumTerms() {
@@ -52,53 +123,293 @@ public class Corpus implements java.io.Serializable {
 	}
 
 	// Corpus Methods
-	public void stemTokens() {
-		Stemmer stemmer = new Stemmer();
-		for (Document doc : documents.values()) {
-			ArrayList<String> tokens = doc.getTokens();
-			for (int i = 0; i < tokens.size(); i++) {
-				String t = tokens.get(i);
-				stemmer.add(t.toCharArray(), t.length());
-				stemmer.stem();
-				String stem = stemmer.toString();
-				// The stem is added to the overall corpus set of terms if it
-				// has not already been added.
-				if (terms.containsKey(stem))
-					terms.get(stem).foundAgain(doc, i);
-				else
-					terms.put(stem, new Term(stem, doc, i));
-			}
+
+	// Make the corpus read-only. A frozen corpus can be searched from any
+	// number of threads at once, as long as it was frozen before they
+	// started; anything that would change the index throws instead.
+	public void freeze() {
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkWritable() {
+		if (frozen)
+			throw new IllegalStateException("Corpus is frozen");
+	}
+
+	// Fold in a partial index built over a disjoint set of documents. Merging
+	// partial indexes in ascending document id order keeps it cheap.
+	public void merge(Corpus other) {
+		checkWritable();
+		for (Document doc : other.documents.values())
+			addDocument(doc);
+		for (Term t : other.termsById) {
+			Term existing = terms.get(t.getString());
+			if (existing == null)
+				putTerm(t);
+			else
+				existing.merge(t);
+		}
+		trainingSet.addAll(other.trainingSet);
+		testSet.addAll(other.testSet);
+	}
+
+	// The cache used to stem both documents and queries.
+	public synchronized StemCache getStemCache() {
+		if (stemCache == null)
+			stemCache = new StemCache();
+		return stemCache;
+	}
+
+	// Postings built for phrases at query time, kept for the most recently
+	// used phrases so that repeating a search is cheap.
+	public synchronized LruCache<String, Term> getPhraseCache() {
+		if (phraseCache == null)
+			phraseCache = new LruCache<String, Term>(PHRASE_CACHE_SIZE);
+		return phraseCache;
+	}
+
+	// Index one document straight from its tokens, so that the raw text of
+	// the corpus never has to be held in memory. Positions count only the
+	// tokens that are kept.
+	public void indexDocument(Document doc, Tokenizer tokens, boolean skipStopWords) {
+		addDocument(doc);
+		StemCache stemmer = getStemCache();
+		char[] chars = tokens.buffer();
+		int position = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			if (skipStopWords && stopWord(chars, tokens.start(i), tokens.length(i)))
+				continue;
+			String stem = stemmer.stem(chars, tokens.start(i), tokens.length(i));
+			// The stem is added to the overall corpus set of terms if it has
+			// not already been added.
+			Term t = terms.get(stem);
+			if (t != null)
+				t.foundAgain(doc, position);
+			else
+				putTerm(new Term(stem, doc, position));
+			position++;
 		}
 	}
 
+	// Shrink the postings to fit once no more documents will be added.
+	public void trimTerms() {
+		checkWritable();
+		for (Term t : terms.values())
+			t.trim();
+	}
+
 	public void calculateTermWeights() {
+		calculateTermWeights(Runtime.getRuntime().availableProcessors());
+	}
 
-		// Iterate through the vocabulary.
-		for (String termString : terms.keySet()) {
-			Term t = terms.get(termString);
-			Map<Integer, TermDoc> posting = t.getPostings();
+	// Weighs on a pool of threads. Each document's vector and statistics
+	// are built by the one task owning a range of document ids, and each
+	// term's postings weighed by the one task owning a range of term ids, so
+	// no two tasks ever write to the same arrays.
+	public void calculateTermWeights(int threads) {
+		double[] idfs = new double[termsById.size()];
+		for (int id = 0; id < idfs.length; id++)
+			idfs[id] = idf(getNumDocuments(), termsById.get(id).getDocFreq());
+		calculateTermWeights(threads, idfs);
+	}
 
-			// Iterate through the docs in which the selected term is found.
-			for (Integer docId : posting.keySet()) {
+	// Weighs the document vectors and lengths by the given idf of each term,
+	// by id, instead of this corpus's own. SegmentedCorpus stores segments
+	// weighed with an idf of 1 and applies the collection's as it reads them.
+	void calculateTermWeights(int threads, final double[] idfs) {
+		checkWritable();
 
-				TermDoc td = posting.get(docId);
-				Document doc = this.getDocument(docId);
+		// Everything a weight needs besides the posting, looked up once.
+		final int[] maxFreqs = new int[maxDocId + 1];
+		for (Document doc : documents.values())
+			maxFreqs[doc.getId()] = doc.getMaxTermFreq();
 
-				final double a = 0.4;
-				double ntf = a + (1 - a) * (double) td.getFreq() / (double) doc.getMaxTermFreq();
-				double idf = Math.log((double) documents.size() / (1 + (double) t.getDocFreq()));
-				doc.addWeight(termString, ntf * idf);
+		inRanges(maxFreqs.length, threads, new RangeTask() {
+			void run(int first, int end) {
+				weighDocuments(first, end, idfs, maxFreqs);
 			}
+		});
+		synchronized (this) {
+			stats = null;
 		}
+		weighed = true;
+		weighPostings(threads);
+	}
 
-		for (Document doc : documents.values())
-			doc.setEuclideanDistance();
+	// Build the vectors of the documents whose ids are from first up to end,
+	// and find their lengths in tokens and under each cosine-normalized
+	// weighting scheme. Every term is visited in id order, skipping straight
+	// to its postings in the range, so each vector comes out sorted.
+	private void weighDocuments(int first, int end, double[] idfs, int[] maxFreqs) {
+		int[] sizes = new int[end - first];
+		for (Term t : termsById) {
+			PostingsIterator posting = t.iterator();
+			for (int docId = posting.advance(first); docId < end; docId = posting.nextDoc())
+				sizes[docId - first]++;
+		}
+		int[][] ids = new int[sizes.length][];
+		double[][] weights = new double[sizes.length][];
+		for (int i = 0; i < sizes.length; i++) {
+			ids[i] = new int[sizes[i]];
+			weights[i] = new double[sizes[i]];
+			sizes[i] = 0;
+		}
+
+		WeightingScheme.Cosine[] schemes = WeightingScheme.COSINE;
+		double[][] lengths = new double[schemes.length][sizes.length];
+		int[] tokens = new int[sizes.length];
+		for (Term t : termsById) {
+			double idf = idfs[t.getId()];
+			PostingsIterator posting = t.iterator();
+			for (int docId = posting.advance(first); docId < end; docId = posting.nextDoc()) {
+				int i = docId - first, n = sizes[i]++;
+				ids[i][n] = t.getId();
+				weights[i][n] = tf(posting.freq(), maxFreqs[docId]) * idf;
+				tokens[i] += posting.freq();
+				for (int s = 0; s < schemes.length; s++) {
+					double weight = schemes[s].tf(posting.freq(), maxFreqs[docId]) * idf;
+					lengths[s][i] += weight * weight;
+				}
+			}
+		}
+
+		for (int docId = first; docId < end; docId++) {
+			Document doc = documents.get(docId);
+			if (doc == null)
+				continue;
+			int i = docId - first;
+			doc.setVector(new SparseVector(ids[i], weights[i]));
+			doc.setNumTokens(tokens[i]);
+			for (int s = 0; s < schemes.length; s++)
+				doc.setLength(schemes[s], Math.sqrt(lengths[s][i]));
+		}
+	}
+
+	// Store each posting's weight under the current scheme alongside it, so
+	// that scoring never has to go back to the documents. Each term also
+	// keeps the bounds of its weights for pruned evaluation.
+	private void weighPostings(int threads) {
+		final WeightingScheme scheme = getWeightingScheme();
+		final DocumentStats stats = getDocumentStats();
+		final int numDocs = getNumDocuments();
+		inRanges(termsById.size(), threads, new RangeTask() {
+			void run(int first, int end) {
+				for (int id = first; id < end; id++)
+					weighTerm(termsById.get(id), scheme, stats, numDocs);
+			}
+		});
+	}
+
+	static void weighTerm(Term t, WeightingScheme scheme, DocumentStats stats, int numDocs) {
+		double idf = scheme.idf(numDocs, t.getDocFreq());
+		float[] weights = new float[t.getDocFreq()];
+		PostingsIterator posting = t.iterator();
+		for (int i = 0; posting.nextDoc() != PostingsIterator.NO_MORE_DOCS; i++)
+			weights[i] = (float) scheme.weight(posting.freq(), idf, posting.docId(), stats);
+		t.setWeights(weights);
 	}
 
-	public void clearTokens() {
-		for (Document doc : this.documents.values())
-			doc.clearTokens();
+	private abstract static class RangeTask {
+		abstract void run(int first, int end);
+	}
 
+	// Split the ids from 0 up to size into ranges and run the task on each of
+	// them on a pool of threads. Several ranges per thread even out the
+	// uneven ones.
+	private static void inRanges(int size, int threads, final RangeTask task) {
+		int ranges = 4 * threads;
+		int step = Math.max(1, (size + ranges - 1) / ranges);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int from = 0; from < size; from += step) {
+			final int first = from, end = Math.min(from + step, size);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					task.run(first, end);
+					return null;
+				}
+			});
+		}
+		runAll(tasks, threads);
+	}
+
+	// Run the tasks on a pool of threads, returning once all are done.
+	private static void runAll(List<Callable<Void>> tasks, int threads) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Void> future : pool.invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// Weigh the postings of a term that is not part of the index, such as a
+	// phrase, exactly as calculateTermWeights weighs the postings of one that
+	// is. The documents are left untouched.
+	public void weighTerm(Term t) {
+		weighTerm(t, getWeightingScheme(), getDocumentStats(), getNumDocuments());
+	}
+
+	// How postings are weighed; tf-idf unless set otherwise.
+	public WeightingScheme getWeightingScheme() {
+		return scheme == null ? WeightingScheme.TFIDF : scheme;
+	}
+
+	// Weigh postings by another scheme from now on, weighing them again if
+	// they already were. Phrases weighed by the old scheme are forgotten.
+	public void setWeightingScheme(WeightingScheme scheme) {
+		checkWritable();
+		this.scheme = scheme;
+		getPhraseCache().clear();
+		if (weighed)
+			weighPostings(Runtime.getRuntime().availableProcessors());
+	}
+
+	// The statistics of every document, gathered from them the first time
+	// they are needed after weighing.
+	public synchronized DocumentStats getDocumentStats() {
+		if (stats == null) {
+			WeightingScheme.Cosine[] schemes = WeightingScheme.COSINE;
+			int[] maxFreqs = new int[maxDocId + 1];
+			int[] numTokens = new int[maxDocId + 1];
+			int[] numTerms = new int[maxDocId + 1];
+			double[][] lengths = new double[schemes.length][maxDocId + 1];
+			for (Document doc : documents.values()) {
+				int docId = doc.getId();
+				maxFreqs[docId] = doc.getMaxTermFreq();
+				numTokens[docId] = doc.getNumTokens();
+				numTerms[docId] = doc.getVector().size();
+				for (int s = 0; s < schemes.length; s++)
+					lengths[s][docId] = doc.getLength(schemes[s]);
+			}
+			stats = new DocumentStats(getNumDocuments(), maxFreqs, numTokens, numTerms, lengths);
+		}
+		return stats;
+	}
+
+	// Augmented term frequency times inverse document frequency.
+	public double tfidf(int freq, int maxFreq, int docFreq) {
+		return tf(freq, maxFreq) * idf(getNumDocuments(), docFreq);
+	}
+
+	static double tf(int freq, int maxFreq) {
+		final double a = 0.4;
+		return a + (1 - a) * (double) freq / (double) maxFreq;
+	}
+
+	static double idf(int numDocs, int docFreq) {
+		return Math.log((double) numDocs / (1 + (double) docFreq));
 	}
 
 	// Stop word list from:
@@ -125,6 +436,41 @@ public class Corpus implements java.io.Serializable {
 		return this.stopWordSet.contains(s);
 	}
 
+	private String[] sortedStopStrings = sortedCopy(stopStrings);
+
+	private static String[] sortedCopy(String[] strings) {
+		String[] sorted = Arrays.copyOf(strings, strings.length);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	// The same test on a token still in a char buffer, without making a
+	// String of it.
+	public boolean stopWord(char[] chars, int start, int length) {
+		int low = 0, high = sortedStopStrings.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(sortedStopStrings[mid], chars, start, length);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	private static int compare(String s, char[] chars, int start, int length) {
+		int n = Math.min(s.length(), length);
+		for (int i = 0; i < n; i++) {
+			int cmp = s.charAt(i) - chars[start + i];
+			if (cmp != 0)
+				return cmp;
+		}
+		return s.length() - length;
+	}
+
 	public ArrayList<Integer> getTrainingSet() {
 		return trainingSet;
 	}
@@ -142,55 +488,94 @@ public class Corpus implements java.io.Serializable {
 	}
 
 	public String[] featureSelection(String topic, int k) {
+		return featureSelection(new String[] { topic }, k)[0];
+	}
+
+	// Picks, for each topic, the k terms with the highest mutual information
+	// with that topic over the training documents, best first. A term's
+	// contingency table only needs how many training documents contain it and
+	// how many of those are in the topic, so one walk over its postings scores
+	// it against every topic at once, in O(df) however large the training set.
+	public String[][] featureSelection(String[] topics, int k) {
+		int[][] ids = selectFeatures(topics, k);
+		String[][] features = new String[topics.length][];
+		for (int t = 0; t < topics.length; t++) {
+			features[t] = new String[ids[t].length];
+			for (int rank = 0; rank < ids[t].length; rank++)
+				features[t][rank] = getTerm(ids[t][rank]).getString();
+		}
+		return features;
+	}
+
+	// As featureSelection, but returns the ids of the selected terms.
+	int[][] selectFeatures(String[] topics, int k) {
 		int n = trainingSet.size();
-		HashMap<String, Double> features = new HashMap<String, Double>();
-		TreeMap<String, Double> sorted_features = new TreeMap<String, Double>(new ValueComparator(features));
 
-		// Iterate through all the terms in the vocabulary.
-		for (Term term : this.terms.values()) {
-			int n11 = 1, n10 = 1, n00 = 1, n01 = 1;
-			for (Integer id : trainingSet) {
-				if (term.getPostings().containsKey(id)) { // term in doc
-					if (this.getDocument(id).getTopics().contains(topic))
-						n11++;
-					else
-						n10++;
-				} else { // term not in doc
-					if (this.getDocument(id).getTopics().contains(topic))
-						n01++;
-					else
-						n00++;
+		// The topics of each training document, as indexes into topics, and
+		// the number of training documents in each topic.
+		Map<String, Integer> topicIndex = new HashMap<String, Integer>();
+		for (int t = 0; t < topics.length; t++)
+			topicIndex.put(topics[t], t);
+		int[][] docTopics = new int[getMaxDocId() + 1][];
+		int[] inTopic = new int[topics.length];
+		for (Integer id : trainingSet) {
+			ArrayList<String> names = getDocument(id).getTopics();
+			int[] indexes = new int[names.size()];
+			int m = 0;
+			for (String name : names) {
+				Integer t = topicIndex.get(name);
+				if (t != null) {
+					indexes[m++] = t;
+					inTopic[t]++;
 				}
 			}
-
-			int n1dot = n10 + n11;
-			int ndot1 = n01 + n11;
-			int n0dot = n00 + n01;
-			int ndot0 = n00 + n10;
-
-			double score = 0;
-			score += n11 / (double) n * Math.log(n * n11 / (double) (n1dot * ndot1));
-			score += n01 / (double) n * Math.log(n * n01 / (double) (n0dot * ndot1));
-			score += n10 / (double) n * Math.log(n * n10 / (double) (n1dot * ndot0));
-			score += n00 / (double) n * Math.log(n * n00 / (double) (n0dot * ndot0));
-
-			features.put(term.getString(), score);
+			docTopics[id] = Arrays.copyOf(indexes, m);
 		}
 
-		sorted_features.putAll(features);
+		TopK[] best = new TopK[topics.length];
+		for (int t = 0; t < topics.length; t++)
+			best[t] = new TopK(Math.min(k, getNumTerms()));
+		int[] inTopicWithTerm = new int[topics.length];
+		for (int termId = 0; termId < getNumTerms(); termId++) {
+			PostingsIterator postings = getTerm(termId).iterator();
+			int df = 0;
+			Arrays.fill(inTopicWithTerm, 0);
+			for (int d = postings.nextDoc(); d != PostingsIterator.NO_MORE_DOCS; d = postings.nextDoc()) {
+				int[] indexes = d < docTopics.length ? docTopics[d] : null;
+				if (indexes == null)
+					continue; // not a training document
+				df++;
+				for (int t : indexes)
+					inTopicWithTerm[t]++;
+			}
+			for (int t = 0; t < topics.length; t++) {
+				// Add one to each cell to smooth the estimates.
+				int n11 = 1 + inTopicWithTerm[t];
+				int n10 = 1 + df - inTopicWithTerm[t];
+				int n01 = 1 + inTopic[t] - inTopicWithTerm[t];
+				int n00 = 1 + n - df - inTopic[t] + inTopicWithTerm[t];
+				best[t].offer(termId, mutualInformation(n, n11, n10, n01, n00));
+			}
+		}
 
-		// for (Map.Entry<String, Double> e : sorted_features.entrySet())
-		// System.out.println(e.getValue() + ":" + e.getKey());
+		int[][] features = new int[topics.length][];
+		for (int t = 0; t < topics.length; t++)
+			features[t] = best[t].getIds();
+		return features;
+	}
 
-		String[] returnFeatures = new String[k];
-		int i = 0;
-		for (String t : sorted_features.keySet()) {
-			returnFeatures[i] = t;
-			++i;
-			if (i == k)
-				break;
-		}
-		return returnFeatures;
+	private static double mutualInformation(int n, int n11, int n10, int n01, int n00) {
+		int n1dot = n10 + n11;
+		int ndot1 = n01 + n11;
+		int n0dot = n00 + n01;
+		int ndot0 = n00 + n10;
+
+		double score = 0;
+		score += n11 / (double) n * Math.log(n * n11 / (double) (n1dot * ndot1));
+		score += n01 / (double) n * Math.log(n * n01 / (double) (n0dot * ndot1));
+		score += n10 / (double) n * Math.log(n * n10 / (double) (n1dot * ndot0));
+		score += n00 / (double) n * Math.log(n * n00 / (double) (n0dot * ndot0));
+		return score;
 	}
 
 	public Map<Integer, Boolean> testCategorization(String topic, String[] features) {
@@ -216,7 +601,7 @@ public class Corpus implements java.io.Serializable {
 
 		// Count docs in class containing term.
 		for (String term : features) {
-			Set<Integer> postings = terms.get(term).getPostings().keySet();
+			Term postings = terms.get(term);
 			int nct_c = 0, nct_cbar = 0;
 			for (Integer id : trainingSet) {
 				boolean inClass = this.getDocument(id).getTopics().contains(topic);
@@ -239,7 +624,7 @@ public class Corpus implements java.io.Serializable {
 			double score_c = Math.log(prior_c);
 			double score_cbar = Math.log(prior_cbar);
 			for (String term : features) {
-				Set<Integer> postings = terms.get(term).getPostings().keySet();
+				Term postings = terms.get(term);
 				if (postings.contains(id)) {
 					score_c += Math.log(condProb_c.get(term));
 					score_cbar += Math.log(condProb_cbar.get(term));
@@ -257,6 +642,16 @@ public class Corpus implements java.io.Serializable {
 	}
 
 	public int[] getStats(String topic, Map<Integer, Boolean> marked) {
+		int[] stats = countStats(topic, marked);
+		double precision = stats[0] / (double) (stats[0] + stats[2]);
+		double recall = stats[0] / (double) (stats[0] + stats[3]);
+		double f1 = 2 * precision * recall / (precision + recall);
+		System.out.println("F1:" + f1 * 100);
+		return stats;
+	}
+
+	// As getStats, without printing: {tp, tn, fp, fn}.
+	public int[] countStats(String topic, Map<Integer, Boolean> marked) {
 		// System.out.println("Test Set Size: " + marked.size());
 		int tp = 0, tn = 0, fp = 0, fn = 0;
 		for (Map.Entry<Integer, Boolean> e : marked.entrySet()) {
@@ -280,32 +675,7 @@ public class Corpus implements java.io.Serializable {
 		// System.out.println("FP:" + fp);
 		// System.out.println("FN:" + fn);
 
-		double precision = tp / (double) (tp + fp);
-		double recall = tp / (double) (tp + fn);
-		double f1 = 2 * precision * recall / (precision + recall);
-		System.out.println("F1:" + f1 * 100);
-
 		int[] stats = { tp, tn, fp, fn };
 		return stats;
 	}
-
-	class ValueComparator implements Comparator<Object> {
-
-		Map<String, Double> base;
-
-		public ValueComparator(Map<String, Double> base) {
-			this.base = base;
-		}
-
-		public int compare(Object a, Object b) {
-
-			if (base.get(a) < base.get(b)) {
-				return 1;
-			} else if (base.get(a) == base.get(b)) {
-				return 0;
-			} else {
-				return -1;
-			}
-		}
-	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,11 @@
+package vectorir;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+// A SAX handler that builds a Corpus out of the documents it parses.
+
+public abstract class CorpusParser extends DefaultHandler {
+
+	public abstract Corpus getCorpus();
+
+}
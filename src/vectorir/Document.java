@@ -1,19 +1,19 @@
 package vectorir;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 
 public class Document implements java.io.Serializable {
 
-	private static final long serialVersionUID = 8345154028331003306L;
+	private static final long serialVersionUID = -6050772264521817130L;
 	private int id;
 	private String title;
 	private String dateline;
 	private String body;
-	private ArrayList<String> tokens = new ArrayList<String>();
-	private Map<String, Double> weights = new HashMap<String, Double>();
-	private double euclideanDistance;
+	private SparseVector vector = SparseVector.EMPTY;
+	// The length of the document's vector under each cosine-normalized
+	// weighting scheme, and its number of tokens.
+	private double[] lengths = new double[WeightingScheme.COSINE.length];
+	private int numTokens = 0;
 	private int maxTermFrequency = 0;
 	private ArrayList<String> topics = new ArrayList<String>();
 
@@ -45,18 +45,6 @@ public class Document implements java.io.Serializable {
 		this.body = body;
 	}
 
-	public ArrayList<String> getTokens() {
-		return tokens;
-	}
-
-	public void setTokens(ArrayList<String> tokens) {
-		this.tokens = tokens;
-	}
-
-	public int getNumTokens() {
-		return tokens.size();
-	}
-
 	public int getId() {
 		return id;
 	}
@@ -70,31 +58,39 @@ public class Document implements java.io.Serializable {
 			this.maxTermFrequency = freq;
 	}
 
-	public double getWeight(String term) {
-		return weights.get(term);
+	// The document's tf-idf weights by term id, before normalization.
+	public SparseVector getVector() {
+		return vector;
+	}
+
+	public void setVector(SparseVector vector) {
+		this.vector = vector;
+		this.lengths[WeightingScheme.TFIDF.lengthSlot()] = vector.norm();
 	}
 
-	public void addWeight(String term, Double weight) {
-		this.weights.put(term, weight);
+	public double getWeight(int termId) {
+		return vector.get(termId);
 	}
 
+	// The length of the tf-idf vector.
 	public double getEuclideanDistance() {
-		return euclideanDistance;
+		return getLength(WeightingScheme.TFIDF);
 	}
 
-	public void setEuclideanDistance() {
-		double distance = 0.0;
-		for (Double weight : this.weights.values())
-			distance += weight * weight;
-		this.euclideanDistance = Math.sqrt(distance);
+	public double getLength(WeightingScheme scheme) {
+		return lengths[scheme.lengthSlot()];
 	}
 
-	public void clearTokens() {
-		this.tokens.clear();
+	public void setLength(WeightingScheme scheme, double length) {
+		lengths[scheme.lengthSlot()] = length;
+	}
+
+	public int getNumTokens() {
+		return numTokens;
 	}
 
-	public Map<String, Double> getWeights() {
-		return weights;
+	public void setNumTokens(int numTokens) {
+		this.numTokens = numTokens;
 	}
 
 	public ArrayList<String> getTopics() {
@@ -0,0 +1,60 @@
+package vectorir;
+
+// What the weighting schemes need to know about every document, in arrays
+// indexed by document id: its largest term frequency, its length in tokens,
+// its number of distinct terms and its length under each cosine-normalized
+// scheme. They are found when the index is weighed and stored with it.
+
+public final class DocumentStats {
+
+	private final int[] maxFreqs;
+	private final int[] numTokens;
+	private final int[] numTerms;
+	private final double[][] lengths;
+	private final double averageTokens;
+	private final double averageTerms;
+
+	// Absent documents have zeros throughout.
+	DocumentStats(int numDocs, int[] maxFreqs, int[] numTokens, int[] numTerms, double[][] lengths) {
+		this.maxFreqs = maxFreqs;
+		this.numTokens = numTokens;
+		this.numTerms = numTerms;
+		this.lengths = lengths;
+		long tokens = 0, terms = 0;
+		for (int docId = 0; docId < maxFreqs.length; docId++) {
+			tokens += numTokens[docId];
+			terms += numTerms[docId];
+		}
+		averageTokens = tokens / (double) Math.max(1, numDocs);
+		averageTerms = terms / (double) Math.max(1, numDocs);
+	}
+
+	public int getMaxFreq(int docId) {
+		return maxFreqs[docId];
+	}
+
+	public int getNumTokens(int docId) {
+		return numTokens[docId];
+	}
+
+	public int getNumTerms(int docId) {
+		return numTerms[docId];
+	}
+
+	// The length of the document under a cosine-normalized scheme.
+	public double getLength(WeightingScheme scheme, int docId) {
+		return getLength(scheme.lengthSlot(), docId);
+	}
+
+	double getLength(int slot, int docId) {
+		return lengths[slot][docId];
+	}
+
+	public double getAverageTokens() {
+		return averageTokens;
+	}
+
+	public double getAverageTerms() {
+		return averageTerms;
+	}
+}
@@ -0,0 +1,108 @@
+package vectorir;
+
+import java.util.Arrays;
+import java.util.List;
+
+// A list of documents as sparse term vectors: for each document, the ids of
+// the terms it contains, in increasing order, and their frequencies. The
+// vectors are built by turning the postings of every term inside out, which
+// takes two passes over the postings; they are only built the first time
+// they are asked for, since some users only need the documents' positions in
+// the list.
+
+public class DocumentVectors {
+
+	private final Corpus corpus;
+	private final int[] docIds;
+	private final int[] index;
+	private volatile int[] starts;
+	private int[] termIds;
+	private int[] freqs;
+
+	public DocumentVectors(Corpus corpus, List<Integer> docs) {
+		this.corpus = corpus;
+		this.docIds = new int[docs.size()];
+		this.index = new int[corpus.getMaxDocId() + 1];
+		Arrays.fill(index, -1);
+		for (int i = 0; i < docIds.length; i++) {
+			docIds[i] = docs.get(i);
+			index[docIds[i]] = i;
+		}
+	}
+
+	public int size() {
+		return docIds.length;
+	}
+
+	public int getDocId(int i) {
+		return docIds[i];
+	}
+
+	// The position of a document in the list, or -1 if it is not in it.
+	public int indexOf(int docId) {
+		return docId < index.length ? index[docId] : -1;
+	}
+
+	// Where the i'th document's entries start among the entries of all the
+	// documents; they end where the next document's start.
+	public int offset(int i) {
+		build();
+		return starts[i];
+	}
+
+	// The total number of entries in all the vectors.
+	public int entries() {
+		build();
+		return termIds.length;
+	}
+
+	// The term id of an entry. Entries are only found through offset or
+	// entries, which build the vectors, so there is no need to check here.
+	public int termIdAt(int entry) {
+		return termIds[entry];
+	}
+
+	// The frequency of an entry's term in its document.
+	public int freqAt(int entry) {
+		return freqs[entry];
+	}
+
+	private void build() {
+		if (starts == null)
+			synchronized (this) {
+				if (starts == null)
+					invert();
+			}
+	}
+
+	private void invert() {
+		int[] counts = new int[docIds.length + 1];
+		for (int t = 0; t < corpus.getNumTerms(); t++) {
+			PostingsIterator postings = corpus.getTerm(t).iterator();
+			for (int d = postings.nextDoc(); d != PostingsIterator.NO_MORE_DOCS; d = postings.nextDoc()) {
+				int i = indexOf(d);
+				if (i >= 0)
+					counts[i + 1]++;
+			}
+		}
+		for (int i = 0; i < docIds.length; i++)
+			counts[i + 1] += counts[i];
+
+		int[] next = Arrays.copyOf(counts, docIds.length);
+		int[] ids = new int[counts[docIds.length]];
+		int[] fs = new int[ids.length];
+		for (int t = 0; t < corpus.getNumTerms(); t++) {
+			PostingsIterator postings = corpus.getTerm(t).iterator();
+			for (int d = postings.nextDoc(); d != PostingsIterator.NO_MORE_DOCS; d = postings.nextDoc()) {
+				int i = indexOf(d);
+				if (i >= 0) {
+					ids[next[i]] = t;
+					fs[next[i]++] = postings.freq();
+				}
+			}
+		}
+		termIds = ids;
+		freqs = fs;
+		starts = counts;
+	}
+}
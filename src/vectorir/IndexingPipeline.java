@@ -0,0 +1,92 @@
+package vectorir;
+
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+// Builds a Corpus from many files at once. Each file is parsed by its own SAX
+// reader on a worker thread, which streams each document into a partial index
+// for that file. The main thread merges the partial indexes in file order as
+// they finish, so postings stay sorted by document id as long as the files
+// are given in document id order.
+
+public class IndexingPipeline {
+
+	private final int threads;
+
+	public IndexingPipeline(int threads) {
+		this.threads = threads;
+	}
+
+	// The handler used to parse each file; override to index differently.
+	protected CorpusParser newParser() {
+		return new SimpleParser(false);
+	}
+
+	public Corpus index(String[] files) throws Exception {
+		long startTime = System.currentTimeMillis();
+		long bytes = 0, stemHits = 0, stemLookups = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Corpus corpus = new Corpus();
+		try {
+			List<Future<Corpus>> partials = new ArrayList<Future<Corpus>>();
+			for (final String file : files) {
+				bytes += new File(file).length();
+				partials.add(pool.submit(new Callable<Corpus>() {
+					public Corpus call() throws Exception {
+						return indexFile(file);
+					}
+				}));
+			}
+			for (Future<Corpus> future : partials) {
+				Corpus partial = future.get();
+				stemHits += partial.getStemCache().getHits();
+				stemLookups += partial.getStemCache().getHits() + partial.getStemCache().getMisses();
+				corpus.merge(partial);
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		} finally {
+			pool.shutdownNow();
+		}
+
+		double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+		System.out.printf("Indexed %d documents (%.1f MB) in %.2f seconds on %d threads: %.0f docs/sec, %.2f MB/sec%n",
+				corpus.getNumDocuments(), bytes / 1e6, seconds, threads, corpus.getNumDocuments() / seconds, bytes
+						/ 1e6 / seconds);
+		System.out.printf("Stem cache hit rate: %.1f%% of %d tokens%n", 100.0 * stemHits / Math.max(1, stemLookups),
+				stemLookups);
+		return corpus;
+	}
+
+	private Corpus indexFile(String file) throws Exception {
+		CorpusParser handler = newParser();
+		XMLReader xr = XMLReaderFactory.createXMLReader();
+		xr.setContentHandler(handler);
+		xr.setErrorHandler(handler);
+		FileReader r = new FileReader(file);
+		try {
+			xr.parse(new InputSource(r));
+		} finally {
+			r.close();
+		}
+
+		// The parser has already stemmed each document into the index as it
+		// ended.
+		Corpus partial = handler.getCorpus();
+		partial.trimTerms();
+		return partial;
+	}
+}
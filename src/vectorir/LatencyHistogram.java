@@ -0,0 +1,73 @@
+package vectorir;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts latencies in logarithmic buckets, four to each doubling, from one
+// microsecond up to about 70 minutes. Recording is lock-free, so any number
+// of threads can share one histogram; a percentile is accurate to within the
+// width of its bucket (about 19%).
+
+public class LatencyHistogram {
+
+	private static final int BUCKETS_PER_DOUBLING = 4;
+	private static final int NUM_BUCKETS = 32 * BUCKETS_PER_DOUBLING;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = Math.max(1, nanos / 1000);
+		counts.incrementAndGet(bucket(micros));
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+		long max;
+		while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros))
+			;
+	}
+
+	private static int bucket(long micros) {
+		int doubling = 63 - Long.numberOfLeadingZeros(micros);
+		// The next two bits below the highest one pick the quarter.
+		int quarter = doubling >= 2 ? (int) (micros >>> (doubling - 2)) & 3 : (int) (micros << (2 - doubling)) & 3;
+		return Math.min(NUM_BUCKETS - 1, doubling * BUCKETS_PER_DOUBLING + quarter);
+	}
+
+	// The upper bound of a bucket, in microseconds.
+	private static long bound(int bucket) {
+		int doubling = bucket / BUCKETS_PER_DOUBLING;
+		int quarter = bucket % BUCKETS_PER_DOUBLING;
+		return ((4L + quarter + 1) << doubling) / 4;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public double getMeanMicros() {
+		long n = count.get();
+		return n == 0 ? 0.0 : totalMicros.get() / (double) n;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	// The latency below which the given fraction of requests fell, in
+	// microseconds.
+	public long getPercentileMicros(double fraction) {
+		long n = count.get();
+		if (n == 0)
+			return 0;
+		long rank = (long) Math.ceil(fraction * n);
+		long seen = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			seen += counts.get(b);
+			if (seen >= rank)
+				return Math.min(bound(b), maxMicros.get());
+		}
+		return maxMicros.get();
+	}
+}
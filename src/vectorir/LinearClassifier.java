@@ -0,0 +1,100 @@
+package vectorir;
+
+// A classifier whose score for a topic is a bias plus the dot product of a
+// weight per term with the document's vector. Documents are sparse, so
+// scoring only touches the terms a document actually contains; the weights
+// are dense, one per term id, so each of those terms costs one array read.
+// Subclasses choose the value of each term in a document, and the bias and
+// weights of a topic from the sums of those values over its training
+// documents.
+
+public abstract class LinearClassifier extends Classifier {
+
+	protected DocumentVectors training;
+	// The sum of each term's values over all the training documents.
+	protected double[] totals;
+	protected double[] bias;
+	protected double[][] weights;
+	private DocumentVectors valued;
+	private double[] values;
+
+	protected LinearClassifier(Corpus corpus, int threads) {
+		super(corpus, threads);
+	}
+
+	// The value of each entry of the vectors.
+	protected abstract double[] values(DocumentVectors docs);
+
+	// Set the bias and weights of a topic, given how many of the n training
+	// documents are in it and the sums of their term values.
+	protected abstract void train(int topic, int nc, int n, double[] classSums);
+
+	protected void prepare() {
+		training = new DocumentVectors(corpus, corpus.getTrainingSet());
+		double[] trainingValues = cachedValues(training);
+		totals = new double[corpus.getNumTerms()];
+		for (int e = 0; e < trainingValues.length; e++)
+			totals[training.termIdAt(e)] += trainingValues[e];
+		bias = new double[topics.length];
+		weights = new double[topics.length][];
+	}
+
+	protected void trainTopic(int t) {
+		double[] trainingValues = cachedValues(training);
+		double[] sums = new double[corpus.getNumTerms()];
+		int nc = 0;
+		for (int i = 0; i < training.size(); i++) {
+			if (!corpus.getDocument(training.getDocId(i)).getTopics().contains(topics[t]))
+				continue;
+			nc++;
+			for (int e = training.offset(i); e < training.offset(i + 1); e++)
+				sums[training.termIdAt(e)] += trainingValues[e];
+		}
+		train(t, nc, training.size(), sums);
+	}
+
+	// How the model finds a term's value in a document.
+	protected abstract int valueKind();
+
+	// Keep just the terms each topic weighs.
+	public CategoryModel toModel() {
+		int[][] termIds = new int[topics.length][];
+		double[][] sparse = new double[topics.length][];
+		for (int t = 0; t < topics.length; t++) {
+			int n = 0;
+			for (double w : weights[t])
+				if (w != 0)
+					n++;
+			termIds[t] = new int[n];
+			sparse[t] = new double[n];
+			n = 0;
+			for (int id = 0; id < weights[t].length; id++)
+				if (weights[t][id] != 0) {
+					termIds[t][n] = id;
+					sparse[t][n++] = weights[t][id];
+				}
+		}
+		return CategoryModel.fromTermIds(valueKind(), corpus, topics, bias, termIds, sparse);
+	}
+
+	protected void scoreTopic(int t, DocumentVectors docs, double[] scores) {
+		double[] docValues = cachedValues(docs);
+		double[] w = weights[t];
+		for (int i = 0; i < docs.size(); i++) {
+			double score = bias[t];
+			for (int e = docs.offset(i); e < docs.offset(i + 1); e++)
+				score += docValues[e] * w[docs.termIdAt(e)];
+			scores[i] = score;
+		}
+	}
+
+	// The values of the last vectors asked for are kept, since every topic
+	// asks for the same ones.
+	private synchronized double[] cachedValues(DocumentVectors docs) {
+		if (docs != valued) {
+			values = values(docs);
+			valued = docs;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,53 @@
+package vectorir;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A small thread-safe cache that holds at most capacity entries, evicting the
+// least recently used one to make room.
+
+public class LruCache<K, V> {
+
+	private final Map<K, V> map;
+	private long hits = 0;
+	private long misses = 0;
+
+	public LruCache(final int capacity) {
+		this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	public synchronized V get(K key) {
+		V value = map.get(key);
+		if (value == null)
+			misses++;
+		else
+			hits++;
+		return value;
+	}
+
+	public synchronized void put(K key, V value) {
+		map.put(key, value);
+	}
+
+	public synchronized void clear() {
+		map.clear();
+	}
+
+	public synchronized int size() {
+		return map.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
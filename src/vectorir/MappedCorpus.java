@@ -0,0 +1,519 @@
+package vectorir;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+// A read-only Corpus served straight out of a memory-mapped index file, so
+// opening it costs next to nothing and only the terms and documents a query
+// touches are ever decoded. It answers the lookups Query and App need; the
+// training and test sets used for categorization are not stored. It is
+// frozen from the start, so any number of threads can search it at once.
+//
+// File layout, all values big-endian:
+//
+// header      int MAGIC, int VERSION, weighting scheme name
+// postings    per term: int[df] doc ids, int[df] freqs, float[df] weights,
+//             int[df + 1] position starts, byte[] positions
+// strings     per term: int length, UTF-8 bytes
+// term table  per term, sorted by string: long postings offset,
+//             int string offset, int df, float max weight, float min weight
+// doc store   per document: int max tf, int #tokens, int #terms, double
+//             length under each cosine-normalized scheme, title,
+//             dateline, body, int #topics, topics,
+//             #terms (int term ordinal, double weight) pairs in ordinal order
+// doc table   per id 0..maxDocId: long doc store offset, or -1 if absent
+// trailer     long term table offset, long doc table offset, int #terms,
+//             int #docs, int maxDocId, int MAGIC
+//
+// Strings are written as an int byte length (-1 for null) then UTF-8 bytes.
+// A single mapping limits the file to 2GB. Posting weights are stored under
+// the scheme named in the header; under any other they are worked out from
+// the frequencies and document statistics as each term is read.
+
+public class MappedCorpus extends Corpus {
+
+	private static final long serialVersionUID = -1410325766203624733L;
+	static final int MAGIC = 0x56495258;
+	static final int VERSION = 4;
+	private static final int TERM_RECORD = 24;
+	private static final int TRAILER = 32;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final transient ByteBuffer buffer;
+	private final long termTable;
+	private final long docTable;
+	private final int numTerms;
+	private final int numDocs;
+	private final int maxDocId;
+	private final WeightingScheme indexScheme;
+	private volatile WeightingScheme scheme;
+	private DocumentStats stats;
+
+	public MappedCorpus(String file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(file + " is too large to map");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+
+		if (buffer.capacity() < 8 + TRAILER || buffer.getInt(0) != MAGIC)
+			throw new IOException(file + " is not a corpus index");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException(file + " has unsupported index version " + buffer.getInt(4));
+		int trailer = buffer.capacity() - TRAILER;
+		if (buffer.getInt(trailer + 28) != MAGIC)
+			throw new IOException(file + " is truncated");
+		termTable = buffer.getLong(trailer);
+		docTable = buffer.getLong(trailer + 8);
+		numTerms = buffer.getInt(trailer + 16);
+		numDocs = buffer.getInt(trailer + 20);
+		maxDocId = buffer.getInt(trailer + 24);
+		ByteBuffer header = buffer.duplicate();
+		header.position(8);
+		indexScheme = WeightingScheme.forName(readString(header));
+		scheme = indexScheme;
+		freeze();
+	}
+
+	@Override
+	public Document getDocument(Integer key) {
+		if (key < 0 || key > maxDocId)
+			return null;
+		long offset = buffer.getLong((int) (docTable + 8L * key));
+		if (offset < 0)
+			return null;
+
+		ByteBuffer in = buffer.duplicate();
+		in.position((int) offset);
+		Document doc = new Document(key);
+		doc.registerTermFreq(in.getInt());
+		doc.setNumTokens(in.getInt());
+		int[] ordinals = new int[in.getInt()];
+		double[] lengths = new double[WeightingScheme.COSINE.length];
+		for (int s = 0; s < lengths.length; s++)
+			lengths[s] = in.getDouble();
+		doc.setTitle(readString(in));
+		doc.setDateline(readString(in));
+		doc.setBody(readString(in));
+		int numTopics = in.getInt();
+		for (int i = 0; i < numTopics; i++)
+			doc.addTopic(readString(in));
+		double[] weights = new double[ordinals.length];
+		for (int i = 0; i < ordinals.length; i++) {
+			ordinals[i] = in.getInt();
+			weights[i] = in.getDouble();
+		}
+		doc.setVector(new SparseVector(ordinals, weights));
+		for (int s = 0; s < lengths.length; s++)
+			doc.setLength(WeightingScheme.COSINE[s], lengths[s]);
+		return doc;
+	}
+
+	@Override
+	public int getMaxTermFreq(int docId) {
+		return buffer.getInt(docOffset(docId));
+	}
+
+	@Override
+	public double getDocumentLength(int docId) {
+		return buffer.getDouble(docOffset(docId) + 12 + 8 * WeightingScheme.TFIDF.lengthSlot());
+	}
+
+	@Override
+	public WeightingScheme getWeightingScheme() {
+		return scheme;
+	}
+
+	// The file is never changed: terms read from now on are weighed by the
+	// new scheme. Choose it before searching starts.
+	@Override
+	public void setWeightingScheme(WeightingScheme scheme) {
+		this.scheme = scheme;
+		getPhraseCache().clear();
+	}
+
+	// Read from the fixed fields at the start of every document's record.
+	@Override
+	public synchronized DocumentStats getDocumentStats() {
+		if (stats == null) {
+			int[] maxFreqs = new int[maxDocId + 1];
+			int[] numTokens = new int[maxDocId + 1];
+			int[] numTerms = new int[maxDocId + 1];
+			double[][] lengths = new double[WeightingScheme.COSINE.length][maxDocId + 1];
+			for (int docId = 0; docId <= maxDocId; docId++) {
+				long offset = buffer.getLong((int) (docTable + 8L * docId));
+				if (offset < 0)
+					continue;
+				maxFreqs[docId] = buffer.getInt((int) offset);
+				numTokens[docId] = buffer.getInt((int) offset + 4);
+				numTerms[docId] = buffer.getInt((int) offset + 8);
+				for (int s = 0; s < lengths.length; s++)
+					lengths[s][docId] = buffer.getDouble((int) offset + 12 + 8 * s);
+			}
+			stats = new DocumentStats(numDocs, maxFreqs, numTokens, numTerms, lengths);
+		}
+		return stats;
+	}
+
+	@Override
+	public boolean containsDocument(int docId) {
+		return docId >= 0 && docId <= maxDocId && buffer.getLong((int) (docTable + 8L * docId)) >= 0;
+	}
+
+	private int docOffset(int docId) {
+		long offset = docId < 0 || docId > maxDocId ? -1 : buffer.getLong((int) (docTable + 8L * docId));
+		if (offset < 0)
+			throw new IllegalArgumentException("No document " + docId);
+		return (int) offset;
+	}
+
+	@Override
+	public int getNumDocuments() {
+		return numDocs;
+	}
+
+	@Override
+	public int getMaxDocId() {
+		return maxDocId;
+	}
+
+	@Override
+	public Term getTerm(String key) {
+		int ordinal = ordinal(key);
+		return ordinal < 0 ? new Term(0) : readTerm(ordinal, key);
+	}
+
+	@Override
+	public int getDocFreq(String key) {
+		int ordinal = ordinal(key);
+		return ordinal < 0 ? 0 : buffer.getInt((int) (termTable + (long) TERM_RECORD * ordinal) + 12);
+	}
+
+	// How many of the given documents a term is found in, reading only its
+	// document ids.
+	int countDocs(String key, BitSet docs) {
+		int ordinal = ordinal(key);
+		return ordinal < 0 ? 0 : countDocs(ordinal, docs);
+	}
+
+	private int countDocs(int ordinal, BitSet docs) {
+		if (docs.isEmpty())
+			return 0;
+		int record = (int) (termTable + (long) TERM_RECORD * ordinal);
+		int docFreq = buffer.getInt(record + 12);
+		int postings = (int) buffer.getLong(record);
+		int n = 0;
+		for (int i = 0; i < docFreq; i++)
+			if (docs.get(buffer.getInt(postings + 4 * i)))
+				n++;
+		return n;
+	}
+
+	// The document frequency of every term, by ordinal, leaving out the
+	// given documents.
+	int[] getDocFreqs(BitSet without) {
+		int[] docFreqs = new int[numTerms];
+		for (int ordinal = 0; ordinal < numTerms; ordinal++)
+			docFreqs[ordinal] = buffer.getInt((int) (termTable + (long) TERM_RECORD * ordinal) + 12)
+					- countDocs(ordinal, without);
+		return docFreqs;
+	}
+
+	// Add the square of every posting's weight under each cosine-normalized
+	// scheme to the sum for its document, given the idf of each term by
+	// ordinal and the largest term frequency of each document. Only the
+	// document ids and frequencies are read, and the postings of the skipped
+	// documents are left out.
+	void addSquaredWeights(double[] idfs, int[] maxFreqs, BitSet skip, double[][] sums) {
+		WeightingScheme.Cosine[] schemes = WeightingScheme.COSINE;
+		for (int ordinal = 0; ordinal < numTerms; ordinal++) {
+			int record = (int) (termTable + (long) TERM_RECORD * ordinal);
+			int docFreq = buffer.getInt(record + 12);
+			int postings = (int) buffer.getLong(record);
+			for (int i = 0; i < docFreq; i++) {
+				int docId = buffer.getInt(postings + 4 * i);
+				if (skip.get(docId))
+					continue;
+				int freq = buffer.getInt(postings + 4 * (docFreq + i));
+				for (int s = 0; s < schemes.length; s++) {
+					double weight = schemes[s].tf(freq, maxFreqs[docId]) * idfs[ordinal];
+					sums[s][docId] += weight * weight;
+				}
+			}
+		}
+	}
+
+	// Term ids are ordinals in the file.
+	@Override
+	public Term getTerm(int id) {
+		if (id < 0 || id >= numTerms)
+			throw new IndexOutOfBoundsException("No term " + id);
+		return readTerm(id, termString(id));
+	}
+
+	@Override
+	public String getTermString(int id) {
+		if (id < 0 || id >= numTerms)
+			throw new IndexOutOfBoundsException("No term " + id);
+		return termString(id);
+	}
+
+	@Override
+	public int getTermId(String key) {
+		return ordinal(key);
+	}
+
+	// Binary search the sorted term table.
+	private int ordinal(String key) {
+		int low = 0, high = numTerms - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = termString(mid).compareTo(key);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	@Override
+	public int getNumTerms() {
+		return numTerms;
+	}
+
+	private String termString(int ordinal) {
+		int record = (int) (termTable + (long) TERM_RECORD * ordinal);
+		ByteBuffer in = buffer.duplicate();
+		in.position(buffer.getInt(record + 8));
+		return readString(in);
+	}
+
+	private Term readTerm(int ordinal, String string) {
+		int record = (int) (termTable + (long) TERM_RECORD * ordinal);
+		int docFreq = buffer.getInt(record + 12);
+		ByteBuffer in = buffer.duplicate();
+		in.position((int) buffer.getLong(record));
+
+		int[] docIds = new int[docFreq];
+		int[] freqs = new int[docFreq];
+		float[] weights = new float[docFreq];
+		int[] positionStarts = new int[docFreq + 1];
+		in.asIntBuffer().get(docIds);
+		in.position(in.position() + 4 * docFreq);
+		in.asIntBuffer().get(freqs);
+		in.position(in.position() + 4 * docFreq);
+		in.asFloatBuffer().get(weights);
+		in.position(in.position() + 4 * docFreq);
+		in.asIntBuffer().get(positionStarts);
+		in.position(in.position() + 4 * (docFreq + 1));
+		byte[] positions = new byte[positionStarts[docFreq]];
+		in.get(positions);
+
+		Term t = new Term(string, docFreq, docIds, freqs, weights, positionStarts, positions,
+				buffer.getFloat(record + 16), buffer.getFloat(record + 20));
+		t.setId(ordinal);
+		if (scheme != indexScheme)
+			weighTerm(t);
+		return t;
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	// Write an in-memory Corpus, with its term weights already calculated, to
+	// an index file that the constructor can map.
+	public static void write(Corpus corpus, String file) throws IOException {
+		CountingStream counter = new CountingStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		DataOutputStream out = new DataOutputStream(counter);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, corpus.getWeightingScheme().getName());
+
+			List<String> sorted = new ArrayList<String>(corpus.getTerms().keySet());
+			Collections.sort(sorted);
+			// The corpus's own term ids need not be ordinals.
+			int[] ordinals = new int[corpus.getNumTerms()];
+			for (int i = 0; i < sorted.size(); i++)
+				ordinals[corpus.getTermId(sorted.get(i))] = i;
+
+			long[] postingsOffsets = new long[sorted.size()];
+			for (int i = 0; i < sorted.size(); i++) {
+				postingsOffsets[i] = counter.offset(file);
+				Term t = corpus.getTerm(sorted.get(i));
+				PostingsIterator p = t.iterator();
+				int[] docIds = t.getDocIds();
+				int[] freqs = new int[docIds.length];
+				float[] weights = new float[docIds.length];
+				int[] positionStarts = new int[docIds.length + 1];
+				ByteArrayBuilder positions = new ByteArrayBuilder();
+				for (int d = 0; p.nextDoc() != PostingsIterator.NO_MORE_DOCS; d++) {
+					freqs[d] = p.freq();
+					weights[d] = p.weight();
+					int previous = 0;
+					for (int pos : p.positions()) {
+						positions.writeVByte(pos - previous);
+						previous = pos;
+					}
+					positionStarts[d + 1] = positions.size();
+				}
+				for (int v : docIds)
+					out.writeInt(v);
+				for (int v : freqs)
+					out.writeInt(v);
+				for (float v : weights)
+					out.writeFloat(v);
+				for (int v : positionStarts)
+					out.writeInt(v);
+				positions.writeTo(out);
+			}
+
+			int[] stringOffsets = new int[sorted.size()];
+			for (int i = 0; i < sorted.size(); i++) {
+				stringOffsets[i] = counter.offset(file);
+				writeString(out, sorted.get(i));
+			}
+
+			long termTable = counter.offset(file);
+			for (int i = 0; i < sorted.size(); i++) {
+				Term t = corpus.getTerm(sorted.get(i));
+				out.writeLong(postingsOffsets[i]);
+				out.writeInt(stringOffsets[i]);
+				out.writeInt(t.getDocFreq());
+				out.writeFloat(t.getMaxWeight());
+				out.writeFloat(t.getMinWeight());
+			}
+
+			long[] docOffsets = new long[corpus.getMaxDocId() + 1];
+			for (int id = 0; id <= corpus.getMaxDocId(); id++) {
+				Document doc = corpus.getDocument(id);
+				if (doc == null) {
+					docOffsets[id] = -1;
+					continue;
+				}
+				docOffsets[id] = counter.offset(file);
+				out.writeInt(doc.getMaxTermFreq());
+				out.writeInt(doc.getNumTokens());
+				out.writeInt(doc.getVector().size());
+				for (WeightingScheme scheme : WeightingScheme.COSINE)
+					out.writeDouble(doc.getLength(scheme));
+				writeString(out, doc.getTitle());
+				writeString(out, doc.getDateline());
+				writeString(out, doc.getBody());
+				out.writeInt(doc.getTopics().size());
+				for (String topic : doc.getTopics())
+					writeString(out, topic);
+				SparseVector vector = doc.getVector();
+				int[] ids = new int[vector.size()];
+				double[] weights = new double[vector.size()];
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = ordinals[vector.termId(i)];
+					weights[i] = vector.weight(i);
+				}
+				vector = SparseVector.sorted(ids, weights);
+				for (int i = 0; i < vector.size(); i++) {
+					out.writeInt(vector.termId(i));
+					out.writeDouble(vector.weight(i));
+				}
+			}
+
+			long docTable = counter.offset(file);
+			for (long offset : docOffsets)
+				out.writeLong(offset);
+
+			out.writeLong(termTable);
+			out.writeLong(docTable);
+			out.writeInt(sorted.size());
+			out.writeInt(corpus.getNumDocuments());
+			out.writeInt(corpus.getMaxDocId());
+			out.writeInt(MAGIC);
+			counter.offset(file);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// Counts the bytes written through it, so that offsets are known exactly
+	// however large the file grows.
+	private static class CountingStream extends FilterOutputStream {
+		private long count = 0;
+
+		CountingStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		// The offset of the next byte written, which must fit the single
+		// mapping the file is read through.
+		int offset(String file) throws IOException {
+			if (count > Integer.MAX_VALUE)
+				throw new IOException(file + " would be too large to map");
+			return (int) count;
+		}
+	}
+
+	// A growable byte array for re-encoding position gaps.
+	private static class ByteArrayBuilder {
+		private byte[] bytes = new byte[64];
+		private int size = 0;
+
+		void writeVByte(int value) {
+			if (size + 5 > bytes.length)
+				bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+			size = Term.encode(bytes, size, value);
+		}
+
+		int size() {
+			return size;
+		}
+
+		void writeTo(DataOutputStream out) throws IOException {
+			out.write(bytes, 0, size);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package vectorir;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Document-at-a-time evaluation of a cosine query using the MaxScore strategy
+// (Turtle and Flood, 1995). Terms are ordered by the most they can add to a
+// score. Once the top k is full, the terms whose bounds together cannot beat
+// the k-th score become non-essential: documents are only found through the
+// other terms, and the non-essential postings are probed only while a
+// document could still make it in. The top k is identical to scoring every
+// document, because each surviving document's score is summed in query order
+// just as Query.cosineScore does it.
+
+public class MaxScore {
+
+	private final Term[] terms;
+	private final double[] queryWeights;
+	private long totalPostings = 0;
+	private long postingsScored = 0;
+
+	public MaxScore(Term[] terms, double[] queryWeights) {
+		this.terms = terms;
+		this.queryWeights = queryWeights;
+	}
+
+	public TopK topK(int k, double queryDistance) {
+		int n = terms.length;
+		TopK top = new TopK(k);
+		PostingsIterator[] postings = new PostingsIterator[n];
+		final double[] upperBounds = new double[n];
+		Integer[] byBound = new Integer[n];
+		for (int t = 0; t < n; t++) {
+			postings[t] = terms[t].iterator();
+			postings[t].nextDoc();
+			double w = queryWeights[t];
+			upperBounds[t] = Math.max(w * terms[t].getMaxWeight(), w * terms[t].getMinWeight());
+			byBound[t] = t;
+			totalPostings += terms[t].getDocFreq();
+		}
+
+		// Order the terms by increasing upper bound. cumulative[i] is the most
+		// that the terms in order[0..i] can add to a document's score.
+		Arrays.sort(byBound, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(upperBounds[a], upperBounds[b]);
+			}
+		});
+		int[] order = new int[n];
+		double[] cumulative = new double[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = byBound[i];
+			cumulative[i] = upperBounds[order[i]] + (i > 0 ? cumulative[i - 1] : 0.0);
+		}
+
+		double[] contributions = new double[n];
+		int[] matched = new int[n];
+		int firstEssential = 0;
+
+		while (true) {
+			// The next candidate is the smallest document in an essential list.
+			int docId = PostingsIterator.NO_MORE_DOCS;
+			for (int i = firstEssential; i < n; i++)
+				docId = Math.min(docId, postings[order[i]].docId());
+			if (docId == PostingsIterator.NO_MORE_DOCS)
+				break;
+
+			int numMatched = 0;
+			double partial = 0.0;
+			for (int i = firstEssential; i < n; i++) {
+				int t = order[i];
+				if (postings[t].docId() == docId) {
+					contributions[t] = queryWeights[t] * postings[t].weight();
+					partial += contributions[t];
+					matched[numMatched++] = t;
+					postingsScored++;
+					postings[t].nextDoc();
+				}
+			}
+
+			// Probe the non-essential lists, most valuable first, while the
+			// document can still beat the k-th score.
+			boolean pruned = false;
+			for (int i = firstEssential - 1; i >= 0; i--) {
+				if (cannotEnter(partial + cumulative[i], queryDistance, top)) {
+					pruned = true;
+					break;
+				}
+				int t = order[i];
+				if (postings[t].advance(docId) == docId) {
+					contributions[t] = queryWeights[t] * postings[t].weight();
+					partial += contributions[t];
+					matched[numMatched++] = t;
+					postingsScored++;
+				}
+			}
+			if (pruned)
+				continue;
+
+			// Sum in query order so the score matches the exhaustive path bit
+			// for bit.
+			Arrays.sort(matched, 0, numMatched);
+			double dotProduct = 0.0;
+			for (int m = 0; m < numMatched; m++)
+				dotProduct += contributions[matched[m]];
+			if (!top.offer(docId, dotProduct / queryDistance))
+				continue;
+
+			while (firstEssential < n && cannotEnter(cumulative[firstEssential], queryDistance, top))
+				firstEssential++;
+		}
+		return top;
+	}
+
+	// True if a document whose dot product is at most bound cannot displace
+	// the k-th best score. Ties go to the lower document id, which every
+	// document in the heap already has, so an equal score is not enough. The
+	// bound is padded slightly so rounding can never prune a real winner.
+	private static boolean cannotEnter(double bound, double queryDistance, TopK top) {
+		if (!top.isFull())
+			return false;
+		return (bound + Math.abs(bound) * 1e-9) / queryDistance <= top.threshold();
+	}
+
+	public long getTotalPostings() {
+		return totalPostings;
+	}
+
+	public long getPostingsSkipped() {
+		return totalPostings - postingsScored;
+	}
+}
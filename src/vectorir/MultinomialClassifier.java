@@ -0,0 +1,66 @@
+package vectorir;
+
+// Multinomial naive Bayes: each topic, and the rest of the collection, is a
+// bag of term occurrences, with add-one smoothing. A document's log odds for
+// the topic are the log odds of the prior plus, for every occurrence of a
+// term, the log of how much likelier the term is in the topic than outside
+// it. Terms absent from a document contribute nothing, so only the terms it
+// contains are visited. With numFeatures above zero only each topic's best
+// terms by mutual information are counted, as with BernoulliClassifier;
+// otherwise the whole vocabulary is.
+
+public class MultinomialClassifier extends LinearClassifier {
+
+	private final int numFeatures;
+	private int[][] features;
+
+	public MultinomialClassifier(Corpus corpus, int numFeatures, int threads) {
+		super(corpus, threads);
+		this.numFeatures = numFeatures;
+	}
+
+	public String getName() {
+		return numFeatures > 0 ? "multinomial-" + numFeatures : "multinomial";
+	}
+
+	protected void prepare() {
+		super.prepare();
+		if (numFeatures > 0)
+			features = corpus.selectFeatures(topics, numFeatures);
+	}
+
+	protected int valueKind() {
+		return CategoryModel.FREQUENCY;
+	}
+
+	// Term frequencies.
+	protected double[] values(DocumentVectors docs) {
+		double[] values = new double[docs.entries()];
+		for (int e = 0; e < values.length; e++)
+			values[e] = docs.freqAt(e);
+		return values;
+	}
+
+	protected void train(int t, int nc, int n, double[] classSums) {
+		int[] vocabulary = features == null ? null : features[t];
+		int size = vocabulary == null ? classSums.length : vocabulary.length;
+
+		// The number of term occurrences in and out of the topic.
+		double inClass = 0, outOfClass = 0;
+		for (int v = 0; v < size; v++) {
+			int id = vocabulary == null ? v : vocabulary[v];
+			inClass += classSums[id];
+			outOfClass += totals[id] - classSums[id];
+		}
+
+		double[] w = new double[classSums.length];
+		for (int v = 0; v < size; v++) {
+			int id = vocabulary == null ? v : vocabulary[v];
+			double condProb_c = (classSums[id] + 1) / (inClass + size);
+			double condProb_cbar = (totals[id] - classSums[id] + 1) / (outOfClass + size);
+			w[id] = Math.log(condProb_c) - Math.log(condProb_cbar);
+		}
+		bias[t] = Math.log(nc / (double) n) - Math.log((n - nc) / (double) n);
+		weights[t] = w;
+	}
+}
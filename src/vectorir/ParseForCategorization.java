@@ -1,60 +1,97 @@
 package vectorir;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
-import org.xml.sax.XMLReader;
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.helpers.XMLReaderFactory;
-import org.xml.sax.helpers.DefaultHandler;
 
 // Modeled after the SAX Quickstart found at:
 // http://sax.sourceforge.net/quickstart.html
 
-public class ParseForCategorization extends DefaultHandler {
+public class ParseForCategorization extends CorpusParser {
 
 	public static void main(String args[]) throws Exception {
-		ParseForCategorization handler = new ParseForCategorization();
-		XMLReader xr = XMLReaderFactory.createXMLReader();
-		xr.setContentHandler(handler);
-		xr.setErrorHandler(handler);
-
-		// Parse each file provided on the command line.
-		for (int i = 0; i < args.length; i++) {
-			FileReader r = new FileReader(args[i]);
-			xr.parse(new InputSource(r));
+		// Leading options: "-threads N" sets the number of indexing and
+		// training threads, and "-save prefix" saves each trained model as
+		// prefix.name.model.
+		int threads = Runtime.getRuntime().availableProcessors();
+		String save = null;
+		int first = 0;
+		while (first + 1 < args.length && args[first].startsWith("-")) {
+			if (args[first].equals("-threads"))
+				threads = Integer.parseInt(args[first + 1]);
+			else if (args[first].equals("-save"))
+				save = args[first + 1];
+			else
+				throw new IllegalArgumentException("Unknown option " + args[first]);
+			first += 2;
 		}
 
-		// Using Porter's Stemming Algorithm, transform tokens to terms.
-		handler.corpus.stemTokens();
-
-		// Clear out token stores to save space.
-		handler.corpus.clearTokens();
+		// Parse and stem each file provided on the command line.
+		IndexingPipeline pipeline = new IndexingPipeline(threads) {
+			protected CorpusParser newParser() {
+				return new ParseForCategorization();
+			}
+		};
+		Corpus corpus = pipeline.index(Arrays.copyOfRange(args, first, args.length));
 
 		// Select topic to categorize on.
 		// String topic = "interest";
 
 		// Feature selection.
-		// String[] features = handler.corpus.featureSelection(topic, 50);
+		// String[] features = corpus.featureSelection(topic, 50);
 
 		// Apply Bernoulli Model.
 		// Map<Integer, Boolean> marked =
-		// handler.corpus.testCategorization(topic, features);
+		// corpus.testCategorization(topic, features);
 
 		// Print results.
-		// handler.corpus.getStats(topic, marked);
+		// corpus.getStats(topic, marked);
 		
 		// -----------------BATCH RESULTS--------------------
 
+		// Train and test every topic listed next to the data files, or just
+		// the ten most frequent ones if there is no list.
 		String[] topics = { "earn", "acq", "money-fx", "grain", "crude", "trade", "interest", "ship", "wheat", "corn" };
+		String[] allTopics = topics;
+		if (first < args.length) {
+			File list = new File(new File(args[first]).getAbsoluteFile().getParentFile(), TOPICS_FILE);
+			if (list.exists())
+				allTopics = readTopics(list);
+		}
+		BernoulliClassifier classifier = new BernoulliClassifier(corpus, 50, threads);
+		long startTime = System.nanoTime();
+		classifier.train(allTopics);
+		long trainTime = System.nanoTime() - startTime;
+		startTime = System.nanoTime();
+		List<Map<Integer, Boolean>> allMarked = classifier.classify(corpus.getTestSet());
+		long classifyTime = System.nanoTime() - startTime;
+
+		int numTest = corpus.getTestSet().size();
+		for (int t = 0; t < allTopics.length; t++) {
+			int[] s = corpus.countStats(allTopics[t], allMarked.get(t));
+			System.out.printf("%-12s tp:%4d fp:%4d fn:%4d  train %6.2f ms  classify %9.0f docs/sec%n", allTopics[t],
+					s[0], s[2], s[3], classifier.getTrainNanos(t) / 1e6,
+					numTest / Math.max(1e-9, classifier.getClassifyNanos(t) / 1e9));
+		}
+		System.out.printf("Selected features for %d topics in %.1f ms%n", allTopics.length,
+				classifier.getPrepareNanos() / 1e6);
+		System.out.printf("Trained %d topics in %.1f ms on %d threads%n", allTopics.length, trainTime / 1e6, threads);
+		System.out.printf("Classified %d documents in %d topics in %.1f ms: %.0f docs/sec%n", numTest,
+				allTopics.length, classifyTime / 1e6, numTest / Math.max(1e-9, classifyTime / 1e9));
+
 		ArrayList<int[]> statsList = new ArrayList<int[]>();
+		List<String> trained = Arrays.asList(allTopics);
 		for (String topic : topics) {
 			System.out.println("Topic: " + topic);
-			String[] features = handler.corpus.featureSelection(topic, 50);
-			Map<Integer, Boolean> marked = handler.corpus.testCategorization(topic, features);
-			int[] stats = handler.corpus.getStats(topic, marked);
+			Map<Integer, Boolean> marked = allMarked.get(trained.indexOf(topic));
+			int[] stats = corpus.getStats(topic, marked);
 			statsList.add(stats);
 		}
 
@@ -87,22 +124,96 @@ public class ParseForCategorization extends DefaultHandler {
 		System.out.println("Microaveraged Recall: " + microRec);
 		System.out.println("Microaveraged F1: " + microF1);
 
+		// -----------------CLASSIFIER COMPARISON--------------------
+
+		// The Bernoulli classifier was trained and tested above.
+		Classifier[] classifiers = { new MultinomialClassifier(corpus, 0, threads),
+				new MultinomialClassifier(corpus, 50, threads), new CentroidClassifier(corpus, threads) };
+		System.out.println("classifier\ttrain_ms\tclassify_ms\tdocs/sec\tmacroF1\tmicroF1\tmicroF1_all");
+		report(corpus, classifier, topics, allTopics, save, trainTime, allMarked, classifyTime);
+		for (Classifier c : classifiers)
+			compare(corpus, c, topics, allTopics, save);
+
 		// topic = "corn";
 		// int[] no_f = {1, 10, 50, 100, 150, 200, 300};
 		// for (int x : no_f) {
 		// System.out.println("FEATURES: " + x);
-		// String[] features = handler.corpus.featureSelection(topic, x);
+		// String[] features = corpus.featureSelection(topic, x);
 		// Map<Integer, Boolean> marked =
-		// handler.corpus.testCategorization(topic, features);
-		// handler.corpus.getStats(topic, marked);
+		// corpus.testCategorization(topic, features);
+		// corpus.getStats(topic, marked);
 		// }
 
 	}
 
+	// Train and test a classifier on every topic, then report on it.
+	private static void compare(Corpus corpus, Classifier classifier, String[] topics, String[] allTopics,
+			String save) throws IOException {
+		long startTime = System.nanoTime();
+		classifier.train(allTopics);
+		long trainTime = System.nanoTime() - startTime;
+		startTime = System.nanoTime();
+		List<Map<Integer, Boolean>> marked = classifier.classify(corpus.getTestSet());
+		long classifyTime = System.nanoTime() - startTime;
+		report(corpus, classifier, topics, allTopics, save, trainTime, marked, classifyTime);
+	}
+
+	// Print a trained classifier's speed, its macro and micro averaged F1
+	// over the given topics, and its micro averaged F1 over all of them. The
+	// model is saved if a prefix is given.
+	private static void report(Corpus corpus, Classifier classifier, String[] topics, String[] allTopics,
+			String save, long trainTime, List<Map<Integer, Boolean>> marked, long classifyTime) throws IOException {
+		List<String> main = Arrays.asList(topics);
+		double f1Total = 0;
+		int[] totals = new int[4], allTotals = new int[4];
+		for (int t = 0; t < allTopics.length; t++) {
+			int[] s = corpus.countStats(allTopics[t], marked.get(t));
+			for (int i = 0; i < 4; ++i)
+				allTotals[i] += s[i];
+			if (!main.contains(allTopics[t]))
+				continue;
+			for (int i = 0; i < 4; ++i)
+				totals[i] += s[i];
+			f1Total += f1(s);
+		}
+		System.out.printf("%s\t%.1f\t%.1f\t%.0f\t%d\t%d\t%d%n", classifier.getName(), trainTime / 1e6,
+				classifyTime / 1e6, corpus.getTestSet().size() / Math.max(1e-9, classifyTime / 1e9),
+				Math.round(100 * f1Total / topics.length), Math.round(100 * f1(totals)),
+				Math.round(100 * f1(allTotals)));
+
+		if (save != null) {
+			String file = save + "." + classifier.getName() + ".model";
+			classifier.toModel().write(file);
+			System.out.printf("Saved %s (%.1f KB)%n", file, new File(file).length() / 1024.0);
+		}
+	}
+
+	private static double f1(int[] s) { // s = {tp, tn, fp, fn};
+		return 2 * s[0] / (double) (2 * s[0] + s[2] + s[3]);
+	}
+
+	// The list of every topic, one per line, that comes with the collection.
+	private static final String TOPICS_FILE = "all-topics-strings.lc.txt";
+
+	private static String[] readTopics(File file) throws IOException {
+		List<String> topics = new ArrayList<String>();
+		BufferedReader r = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = r.readLine()) != null)
+				if (line.trim().length() > 0)
+					topics.add(line.trim());
+		} finally {
+			r.close();
+		}
+		return topics.toArray(new String[topics.size()]);
+	}
+
 	private Corpus corpus = new Corpus();
 	private String currentTag;
 	private Document currentDocument;
 	private StringBuilder sb;
+	private Tokenizer tokenizer = new Tokenizer();
 	private String category = null;
 	private boolean storeDoc = false;
 
@@ -110,6 +221,10 @@ public class ParseForCategorization extends DefaultHandler {
 		super();
 	}
 
+	public Corpus getCorpus() {
+		return corpus;
+	}
+
 	// //////////////////////////////////////////////////////////////////
 	// Event handlers.
 	// //////////////////////////////////////////////////////////////////
@@ -130,6 +245,7 @@ public class ParseForCategorization extends DefaultHandler {
 		if (qName.equals("REUTERS")) {
 			Integer id = new Integer(atts.getValue("NEWID"));
 			this.currentDocument = new Document(id);
+			this.tokenizer.reset();
 			String train = atts.getValue("LEWISSPLIT");
 			String topics = atts.getValue("TOPICS");
 			if (train.equals("TRAIN") && topics.equals("YES")) {
@@ -149,6 +265,9 @@ public class ParseForCategorization extends DefaultHandler {
 	}
 
 	public void endElement(String uri, String name, String qName) {
+		// Text between elements belongs to none of them.
+		this.currentTag = "";
+
 		if (qName.equals("TOPICS"))
 			this.category = null;
 		else if (qName.equals("D") && this.category != null)
@@ -158,34 +277,24 @@ public class ParseForCategorization extends DefaultHandler {
 		else if (qName.equals("DATELINE"))
 			this.currentDocument.setDateline(sb.toString().trim());
 		else if (qName.equals("BODY")) {
-			// Remove excess white space.
+			// Index the title along with the body. White space has already
+			// been collapsed as the text arrived.
 			String title = this.currentDocument.getTitle();
-			sb.append(" " + title);
-			String bodyText = sb.toString().replaceAll("\\s+", " ");
-			this.currentDocument.setBody(bodyText);
-
-			String[] tokens = sb.toString()
-			// Replace all dashes and slashes with white space.
-					.replaceAll("[\\-\\/]", " ")
-					// Remove all non letters, keeping white space.
-					.replaceAll("[^a-zA-Z\\s]", "")
-					// Convert text to lower case.
-					.toLowerCase()
-					// Split on white space.
-					.split("\\s+");
-
-			// Eliminate stop words.
-			ArrayList<String> tokenList = new ArrayList<String>();
-			for (String s : tokens) {
-				if (!corpus.stopWord(s))
-					tokenList.add(s);
+			if (title != null) {
+				if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ')
+					sb.append(' ');
+				sb.append(title);
+				tokenizer.feed(" ");
+				tokenizer.feed(title);
 			}
-
-			this.currentDocument.setTokens(tokenList);
+			this.currentDocument.setBody(sb.toString());
+			tokenizer.finish();
 
 		} else if (qName.equals("REUTERS")) {
+			// Eliminate stop words, then transform the remaining tokens to
+			// terms right away.
 			if (storeDoc)
-				this.corpus.addDocument(this.currentDocument);
+				this.corpus.indexDocument(this.currentDocument, tokenizer, true);
 			// System.out.println("DOCID:" + this.currentDocument.getId());
 			// System.out.println("TOPICS:" + this.currentDocument.getTopics());
 			// System.out.println("TITLE:" + this.currentDocument.getTitle());
@@ -193,8 +302,8 @@ public class ParseForCategorization extends DefaultHandler {
 			// this.currentDocument.getDateline());
 			// System.out.println("BODY:" + this.currentDocument.getBody());
 			// System.out.print("TOKENS:");
-			// for (String s : this.currentDocument.getTokens())
-			// System.out.print(s + ",");
+			// for (int i = 0; i < tokenizer.size(); i++)
+			// System.out.print(tokenizer.getToken(i) + ",");
 			// System.out.println("\n");
 		}
 	}
@@ -205,6 +314,10 @@ public class ParseForCategorization extends DefaultHandler {
 		if (!(t.equals("TITLE") || t.equals("DATELINE") || t.equals("BODY") || (t.equals("D") && (this.category != null))))
 			return;
 
+		boolean body = t.equals("BODY");
+		if (body)
+			tokenizer.feed(ch, start, length);
+
 		for (int i = start; i < start + length; i++) {
 			switch (ch[i]) {
 			case '\\':
@@ -213,8 +326,11 @@ public class ParseForCategorization extends DefaultHandler {
 			case '"':
 				sb.append("\\\"");
 				break;
+			case ' ':
 			case '\n':
-				sb.append(" ");
+				// Collapse runs of white space in the body.
+				if (!body || sb.length() == 0 || sb.charAt(sb.length() - 1) != ' ')
+					sb.append(" ");
 			case '\r':
 				break;
 			case '\t':
@@ -0,0 +1,146 @@
+package vectorir;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Finds the documents in which a sequence of terms occurs in order, either as
+// an exact phrase or, with a slop of N, with up to N other words in between
+// ("a b"~N). Documents containing every term are found by leapfrogging the
+// postings, rarest term first, with galloping advances. Within a document the
+// sorted position lists are then walked in a single linear merge: for each
+// position of the first term, every later term takes its earliest position
+// after the previous term's, and each of those pointers only ever moves
+// forward.
+
+public class PhraseMatcher {
+
+	private final PostingsIterator[] postings;
+	private final PostingsIterator[] byRarity;
+	private final int slop;
+	private int docId = -1;
+	private int[] matches = new int[8];
+	private int numMatches = 0;
+
+	public PhraseMatcher(Term[] terms, int slop) {
+		this.slop = slop;
+		postings = new PostingsIterator[terms.length];
+		byRarity = new PostingsIterator[terms.length];
+		for (int t = 0; t < terms.length; t++)
+			postings[t] = byRarity[t] = terms[t].iterator();
+		Arrays.sort(byRarity, new Comparator<PostingsIterator>() {
+			public int compare(PostingsIterator a, PostingsIterator b) {
+				return a.size() - b.size();
+			}
+		});
+	}
+
+	// Move to the next document containing the phrase, or NO_MORE_DOCS.
+	public int nextDoc() {
+		if (docId == PostingsIterator.NO_MORE_DOCS)
+			return docId;
+		int target = byRarity[0].nextDoc();
+		while (target != PostingsIterator.NO_MORE_DOCS) {
+			// Leapfrog the iterators until they all agree on a document.
+			boolean inAllPostings = true;
+			for (int t = 1; t < byRarity.length; t++) {
+				int d = byRarity[t].advance(target);
+				if (d != target) {
+					target = byRarity[0].advance(d);
+					inAllPostings = false;
+					break;
+				}
+			}
+			if (inAllPostings) {
+				if (matchPositions())
+					return docId = target;
+				target = byRarity[0].nextDoc();
+			}
+		}
+		numMatches = 0;
+		return docId = PostingsIterator.NO_MORE_DOCS;
+	}
+
+	public int docId() {
+		return docId;
+	}
+
+	// The number of times the phrase occurs in the current document.
+	public int freq() {
+		return numMatches;
+	}
+
+	// The positions of the first term of each occurrence, in order.
+	public int[] positions() {
+		return Arrays.copyOf(matches, numMatches);
+	}
+
+	// Collect the remaining matches into the postings of a stand-alone term,
+	// with the start of each occurrence as its position. The term belongs to
+	// no Corpus and its weights are left at zero.
+	public Term toTerm(String name) {
+		int[] docIds = new int[8];
+		int[] freqs = new int[8];
+		int[] positionStarts = new int[9];
+		byte[] positions = new byte[64];
+		int docFreq = 0, size = 0;
+		while (nextDoc() != PostingsIterator.NO_MORE_DOCS) {
+			if (docFreq == docIds.length) {
+				docIds = Arrays.copyOf(docIds, 2 * docFreq);
+				freqs = Arrays.copyOf(freqs, 2 * docFreq);
+				positionStarts = Arrays.copyOf(positionStarts, 2 * docFreq + 1);
+			}
+			if (size + 5 * numMatches > positions.length)
+				positions = Arrays.copyOf(positions, Math.max(2 * positions.length, size + 5 * numMatches));
+			int previous = 0;
+			for (int m = 0; m < numMatches; m++) {
+				size = Term.encode(positions, size, matches[m] - previous);
+				previous = matches[m];
+			}
+			docIds[docFreq] = docId;
+			freqs[docFreq] = numMatches;
+			positionStarts[++docFreq] = size;
+		}
+		return new Term(name, docFreq, Arrays.copyOf(docIds, docFreq), Arrays.copyOf(freqs, docFreq),
+				new float[docFreq], Arrays.copyOf(positionStarts, docFreq + 1), Arrays.copyOf(positions, size), 0, 0);
+	}
+
+	private boolean matchPositions() {
+		int n = postings.length;
+		int[][] positions = new int[n][];
+		for (int t = 0; t < n; t++)
+			positions[t] = postings[t].positions();
+		int[] next = new int[n];
+		int maxSpan = n - 1 + slop;
+
+		numMatches = 0;
+		for (int start : positions[0]) {
+			int previous = start;
+			boolean found = true;
+			for (int t = 1; t < n && found; t++) {
+				int[] p = positions[t];
+				while (next[t] < p.length && p[next[t]] <= previous)
+					next[t]++;
+				if (next[t] == p.length || p[next[t]] - start > maxSpan)
+					found = false;
+				else
+					previous = p[next[t]];
+			}
+			if (found) {
+				if (numMatches == matches.length)
+					matches = Arrays.copyOf(matches, 2 * numMatches);
+				matches[numMatches++] = start;
+			}
+			// Once a later term has run out no further start can match.
+			if (!found && exhausted(positions, next))
+				break;
+		}
+		return numMatches > 0;
+	}
+
+	private static boolean exhausted(int[][] positions, int[] next) {
+		for (int t = 1; t < positions.length; t++)
+			if (next[t] == positions[t].length)
+				return true;
+		return false;
+	}
+}
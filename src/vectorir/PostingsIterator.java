@@ -0,0 +1,75 @@
+package vectorir;
+
+import java.util.Arrays;
+
+// A forward-only cursor over the postings of a single Term. Call nextDoc() or
+// advance() before reading docId(), freq(), weight() or positions().
+
+public class PostingsIterator {
+
+	public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	private final int[] docIds;
+	private final int[] freqs;
+	private final float[] weights;
+	private final int[] positionStarts;
+	private final byte[] positions;
+	private final int size;
+	private int index = -1;
+
+	PostingsIterator(int[] docIds, int[] freqs, float[] weights, int[] positionStarts, byte[] positions, int size) {
+		this.docIds = docIds;
+		this.freqs = freqs;
+		this.weights = weights;
+		this.positionStarts = positionStarts;
+		this.positions = positions;
+		this.size = size;
+	}
+
+	public int nextDoc() {
+		if (index < size)
+			index++;
+		return docId();
+	}
+
+	// Move to the first document whose id is greater than or equal to target.
+	// Gallops ahead in doubling steps and binary searches the last step, so
+	// long jumps cost O(log distance) rather than a posting at a time.
+	public int advance(int target) {
+		if (index < 0)
+			index = 0;
+		if (index >= size || docIds[index] >= target)
+			return docId();
+		int low = index, step = 1, high = index + 1;
+		while (high < size && docIds[high] < target) {
+			low = high;
+			step <<= 1;
+			high = low + step;
+		}
+		int i = Arrays.binarySearch(docIds, low + 1, Math.min(high, size), target);
+		index = i >= 0 ? i : -(i + 1);
+		return docId();
+	}
+
+	public int docId() {
+		if (index < 0)
+			return -1;
+		return index < size ? docIds[index] : NO_MORE_DOCS;
+	}
+
+	public int freq() {
+		return freqs[index];
+	}
+
+	public float weight() {
+		return weights[index];
+	}
+
+	public int[] positions() {
+		return Term.decodePositions(positions, positionStarts[index], freqs[index]);
+	}
+
+	public int size() {
+		return size;
+	}
+}
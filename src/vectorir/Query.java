@@ -1,220 +1,289 @@
 package vectorir;
 
-import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
-import vectorir.Term.TermDoc;
 
 public class Query {
 
 	private Corpus corpus;
-	private int numEmptyTokens;
 	private Map<Integer, Integer> phrasePositions;
+	private Map<Integer, Integer> phraseSlops;
+	private Map<String, Term> termPostings = new HashMap<String, Term>();
 	private String[] queryTokens = null;
 	private Map<String, Double> queryVector = new HashMap<String, Double>();
 	private HashSet<Integer> relevantDocs = new HashSet<Integer>();
 	private HashSet<Integer> nonRelevantDocs = new HashSet<Integer>();
 	private String[] queryTerms;
-	private Map<Integer, Double> docScores = new HashMap<Integer, Double>();
+	private double[] scores;
+	private int[] results;
+	private int numResults = 0;
+	private TopK ranking;
+	private boolean pruned = false;
 	private double queryDistance = 0.0;
+	private boolean verbose = true;
+	// Rocchio's weights for the query, the relevant documents and the
+	// non-relevant ones, and how many new terms a round may add.
+	private double alpha = 1.0;
+	private double beta = 0.75;
+	private double gamma = 0.25;
+	private int expansionTerms = DEFAULT_EXPANSION_TERMS;
+	private boolean skipStopWords = false;
+	public static final int DEFAULT_EXPANSION_TERMS = 50;
 
 	public Query(Corpus c) {
 		this.corpus = c;
 	}
 
+	// Whether to report progress and syntax errors on the console.
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	public void setRocchioWeights(double alpha, double beta, double gamma) {
+		this.alpha = alpha;
+		this.beta = beta;
+		this.gamma = gamma;
+	}
+
+	// At most this many terms not already in the query are added by each
+	// round of feedback, those weighing most in the relevant centroid.
+	public void setExpansionTerms(int expansionTerms) {
+		this.expansionTerms = expansionTerms;
+	}
+
+	// Whether feedback should leave stop words out of the terms it adds.
+	// The index keeps them for the sake of phrases, so by default they are
+	// candidates like any other term.
+	public void setSkipStopWords(boolean skipStopWords) {
+		this.skipStopWords = skipStopWords;
+	}
+
 	public boolean prepareQuery(String query) {
-		// Replace all dashes and slashes with white space.
-		this.queryTokens = query.replaceAll("[\\-\\/]", " ")
-		// Remove all non letters except double quotes and white space.
-				.replaceAll("[^a-zA-Z\\s\\\"]", "")
-				// Convert text to lower case.
-				.toLowerCase()
-				// Split on white space.
-				.split("\\s+");
+		// Tokenize exactly as the parsers do, keeping double quotes and
+		// proximity markers as tokens of their own so that phrases can be
+		// found.
+		String[] tokens = new Tokenizer(true).tokenize(query);
 
 		boolean inPhrase = false; // flag to distinguish L/R quote mark.
-		this.numEmptyTokens = 0;
-		int start = 0, finish = 0;
+		int numTokens = 0, start = 0;
+		this.queryTokens = new String[tokens.length];
 		this.phrasePositions = new HashMap<Integer, Integer>();
-
-		// Find any phrases by looking for quotes (") in the terms.
-		for (int i = 0; i < queryTokens.length; i++) {
-			if (queryTokens[i].contains("\"")) {
-				if (!inPhrase) { // L quotation found.
-					inPhrase = true;
-					start = i;
-				} else { // R quotation found.
-					inPhrase = false;
-					finish = i;
-					// Store the positions of the term starting a phrase in a
-					// Map with the term ending that same phrase.
-					phrasePositions.put(start - numEmptyTokens, finish - numEmptyTokens);
-				}
-				queryTokens[i] = queryTokens[i].replace("\"", "");
-			} else if (queryTokens[i].isEmpty()) {
-				// If the token is empty it should be the first token.
-				// That token should be the start of a phrase.
-				numEmptyTokens++;
+		this.phraseSlops = new HashMap<Integer, Integer>();
+
+		for (int i = 0; i < tokens.length; i++) {
+			String token = tokens[i];
+			if (token.charAt(0) == Tokenizer.SLOP) {
+				// A "~N" right after a phrase lets up to N other words fall
+				// between its terms; anywhere else it is ignored.
+				if (!inPhrase && i > 0 && tokens[i - 1].equals(Tokenizer.QUOTE) && phrasePositions.containsKey(start)
+						&& token.length() > 1 && token.length() < 10)
+					phraseSlops.put(start, Integer.parseInt(token.substring(1)));
+				continue;
+			}
+			if (!token.equals(Tokenizer.QUOTE)) {
+				queryTokens[numTokens++] = token;
+				continue;
+			}
+			if (!inPhrase) { // L quotation found.
+				inPhrase = true;
+				start = numTokens;
+			} else { // R quotation found.
+				// A phrase needs at least two words; report one that doesn't
+				// like a missing quote.
+				if (numTokens - start < 2)
+					break;
+				inPhrase = false;
+				// Store the positions of the term starting a phrase in a Map
+				// with the term ending that same phrase.
+				phrasePositions.put(start, numTokens - 1);
 			}
 		}
+		this.queryTokens = Arrays.copyOf(queryTokens, numTokens);
 
 		// After iterating though all the tokens, if still in a phrase, there is
 		// a missing quote.
 		if (inPhrase) {
-			System.err
-					.println("SYNTAX ERROR: Unmatched quotation mark in" + " query OR single word eclosed in quotes.");
+			if (verbose)
+				System.err.println("SYNTAX ERROR: Unmatched quotation mark in"
+						+ " query OR single word eclosed in quotes.");
 			return false;
 		} else
 			return true;
 	}
 
 	public void executeQuery() {
+		buildQueryVector();
+		cosineScore();
+	}
+
+	// Evaluates the query with MaxScore pruning, finding only the k best
+	// documents. Paging past them through topK falls back to scoring every
+	// document.
+	public void executeQuery(int k) {
+		buildQueryVector();
+		maxScore(k);
+	}
+
+	private void buildQueryVector() {
 		// Convert query tokens to terms using the stemming algorithm.
 		// This is done independent of phrasing.
-		queryTerms = new String[queryTokens.length - numEmptyTokens];
-		Stemmer stemmer = new Stemmer();
-		for (int i = 0; i < queryTerms.length; i++) {
-			String q = queryTokens[i + numEmptyTokens];
-			stemmer.add(q.toCharArray(), q.length());
-			stemmer.stem();
-			queryTerms[i] = stemmer.toString();
+		queryTerms = new String[queryTokens.length];
+		// The corpus's stem cache is shared by every query running on it.
+		StemCache stemmer = corpus.getStemCache();
+		synchronized (stemmer) {
+			for (int i = 0; i < queryTerms.length; i++)
+				queryTerms[i] = stemmer.stem(queryTokens[i]);
 		}
 
-		final double a = 0.4;
-		double ntf_query = a + (1 - a);
-
-		// For each "true" term, initialize docScores entries for entries in the
-		// term's postings and calculate query tf-idf values.
+		// For each "true" term, calculate its weight under the corpus's
+		// weighting scheme.
+		WeightingScheme scheme = corpus.getWeightingScheme();
 		for (int i = 0; i < queryTerms.length; i++) {
 			String termString = queryTerms[i];
-			double weight = 0.0, idf = 0.0;
+			double weight;
 
 			if (phrasePositions.containsKey(i)) {
 
-				// Mash phrase together into one String and find documents that
-				// contain all of the terms.
+				// Name the phrase after its terms and find the documents that
+				// contain all of them in order.
+				int end = phrasePositions.get(i);
+				int slop = phraseSlops.containsKey(i) ? phraseSlops.get(i) : 0;
 				StringBuilder sb = new StringBuilder();
-				Set<Integer> docsWithAllTerms = corpus.getTerm(queryTerms[i]).getPostings().keySet();
-				for (int t = i; t < phrasePositions.get(i); t++) {
+				Term[] terms = new Term[end - i + 1];
+				for (int t = i; t <= end; t++) {
+					if (t > i)
+						sb.append(' ');
 					sb.append(queryTerms[t]);
-					docsWithAllTerms.retainAll(corpus.getTerm(queryTerms[t + 1]).getPostings().keySet());
+					terms[t - i] = getTerm(queryTerms[t]);
 				}
-				sb.append(queryTerms[phrasePositions.get(i)]);
+				if (slop > 0)
+					sb.append("~" + slop);
 				termString = sb.toString();
-				Integer[] docs = docsWithAllTerms.toArray(new Integer[docsWithAllTerms.size()]);
-
-				// 3. Examine resulting set of documents one-by-one to determine
-				// if any contain the phrase.
-				for (Integer docId : docs) {
-
-					// Retrieve the position lists for each term in the phrase.
-					Map<String, ArrayList<Integer>> positions = new HashMap<String, ArrayList<Integer>>();
-					for (int t = i; t <= phrasePositions.get(i); t++)
-						positions.put(queryTerms[t], corpus.getTerm(queryTerms[t]).getPostings().get(docId)
-								.getPositions());
-
-					boolean phraseFoundInDocument = false;
-					for (Integer k : positions.get(queryTerms[i])) {
-						boolean phraseFoundAtThisPosition = true;
-						for (int j = i + 1; j <= phrasePositions.get(i); j++) {
-							if (!positions.get(queryTerms[j]).contains(k + j - i)) {
-								phraseFoundAtThisPosition = false;
-								break;
-							}
-						}
-						if (phraseFoundAtThisPosition) {
-							phraseFoundInDocument = true;
-							if (!corpus.getTerms().containsKey(termString))
-								corpus.addTerm(termString, corpus.getDocument(docId), k);
-							else
-								corpus.getTerm(termString).foundAgain(corpus.getDocument(docId), k);
-						}
-					}
-
-					// If phrase was found in the document, calculate its tf-idf
-					// weight, otherwise set that weight to zero.
-					Document doc = corpus.getDocument(docId);
-					if (phraseFoundInDocument) {
-						docScores.put(docId, 0.0);
-						Term t = corpus.getTerm(termString);
-						TermDoc td = t.getPostings().get(docId);
-
-						double ntf = a + (1 - a) * (double) td.getFreq() / (double) doc.getMaxTermFreq();
-						idf = Math.log((double) corpus.getNumDocuments() / (1 + (double) t.getDocFreq()));
-						doc.addWeight(termString, ntf * idf);
-					} else
-						doc.addWeight(termString, 0.0);
-				} // END: for (Integer docId : docs)
+
+				// The phrase's postings belong to this query alone, so the
+				// index is never modified. Recently used phrases are cached.
+				Term phrase = corpus.getPhraseCache().get(termString);
+				if (phrase == null) {
+					phrase = new PhraseMatcher(terms, slop).toTerm(termString);
+					corpus.weighTerm(phrase);
+					corpus.getPhraseCache().put(termString, phrase);
+				}
+				termPostings.put(termString, phrase);
+				weight = scheme.queryWeight(corpus.getNumDocuments(), phrase.getDocFreq());
 
 				// Move out of phrase.
 				i = phrasePositions.get(i);
 
 			} else {
 				// If it's not a phrase, things are much easier since the df_t
-				// number has already been calculated.
-				Term t = corpus.getTerm(queryTerms[i]);
-				for (Integer docId : t.getPostings().keySet())
-					docScores.put(docId, 0.0);
-				idf = Math.log(((double) corpus.getNumDocuments()) / (1 + corpus.getTerm(termString).getDocFreq()));
+				// number has already been calculated; the postings are only
+				// read once scoring needs them.
+				weight = scheme.queryWeight(corpus.getNumDocuments(), corpus.getDocFreq(termString));
 			}
 
-			System.out.println("'" + termString + "'" + " found in " + corpus.getTerm(termString).getDocFreq()
-					+ " documents: " + corpus.getTerm(termString).getPostings().keySet());
-			weight = ntf_query * idf;
+			if (verbose) {
+				Term t = getTerm(termString);
+				System.out.println("'" + termString + "'" + " found in " + t.getDocFreq() + " documents: "
+						+ Arrays.toString(t.getDocIds()));
+			}
 
 			queryVector.put(termString, weight);
 			queryDistance += weight * weight;
 		} // END for (int i = 0; i < queryTerms.length; i++)
 
 		queryDistance = Math.sqrt(queryDistance);
-		cosineScore();
+	}
+
+	// The postings of a term or phrase of the query, read from the corpus
+	// once per query. Phrases are found among this query's own terms.
+	private Term getTerm(String termString) {
+		Term t = termPostings.get(termString);
+		if (t == null) {
+			t = corpus.getTerm(termString);
+			termPostings.put(termString, t);
+		}
+		return t;
+	}
+
+	public void maxScore(int k) {
+		Term[] terms = new Term[queryVector.size()];
+		double[] weights = new double[terms.length];
+		int t = 0;
+		for (Map.Entry<String, Double> e : queryVector.entrySet()) {
+			terms[t] = getTerm(e.getKey());
+			weights[t++] = e.getValue();
+		}
+		MaxScore evaluator = new MaxScore(terms, weights);
+		ranking = evaluator.topK(k, queryDistance);
+		pruned = true;
+		numResults = ranking.size();
+		if (verbose)
+			System.out.println("MaxScore skipped " + evaluator.getPostingsSkipped() + " of "
+					+ evaluator.getTotalPostings() + " postings.");
 	}
 
 	public void cosineScore() {
-		// For each of the documents where a query term is found, calculate it's
-		// cosine similarity to the query vector.
-		for (Integer docId : docScores.keySet()) {
-			double dotproduct = 0.0;
-			for (String term : queryVector.keySet()) {
-				if (corpus.getTerm(term).getPostings().containsKey(docId))
-					dotproduct += queryVector.get(term) * corpus.getDocument(docId).getWeight(term);
+		// Walk the postings of each query term once, accumulating partial dot
+		// products by document id. Posting weights are already divided by the
+		// length of their document, so only the query length remains.
+		double[] accumulators = new double[corpus.getMaxDocId() + 1];
+		boolean[] candidates = new boolean[accumulators.length];
+		for (Map.Entry<String, Double> e : queryVector.entrySet()) {
+			double queryWeight = e.getValue();
+			PostingsIterator postings = getTerm(e.getKey()).iterator();
+			while (postings.nextDoc() != PostingsIterator.NO_MORE_DOCS) {
+				int docId = postings.docId();
+				accumulators[docId] += queryWeight * postings.weight();
+				candidates[docId] = true;
 			}
-			double cosineSim = dotproduct / (corpus.getDocument(docId).getEuclideanDistance() * queryDistance);
-			docScores.put(docId, cosineSim);
 		}
 
-		docScores = sortByValue(docScores);
-		System.out.println(docScores);
+		// For each of the documents where a query term is found, calculate it's
+		// cosine similarity to the query vector. Ranking is left until a
+		// caller asks for the top k.
+		results = new int[accumulators.length];
+		numResults = 0;
+		ranking = null;
+		pruned = false;
+		for (int docId = 0; docId < accumulators.length; docId++) {
+			if (candidates[docId]) {
+				accumulators[docId] /= queryDistance;
+				results[numResults++] = docId;
+			}
+		}
+		scores = accumulators;
 	}
 
-	private static Map<Integer, Double> sortByValue(Map<Integer, Double> map) {
-		List<Map.Entry<Integer, Double>> list = new LinkedList<Map.Entry<Integer, Double>>(map.entrySet());
+	// The number of documents scored. After a pruned evaluation only the top k
+	// are known, until paging past them scores the rest.
+	public int getNumResults() {
+		return numResults;
+	}
 
-		Collections.sort(list, Collections.reverseOrder(new Comparator<Map.Entry<Integer, Double>>() {
-			public int compare(Map.Entry<Integer, Double> o1, Map.Entry<Integer, Double> o2) {
-				return ((Comparable<Double>) ((Map.Entry<Integer, Double>) (o1)).getValue())
-						.compareTo(((Map.Entry<Integer, Double>) (o2)).getValue());
-			}
-		}));
+	public boolean hasMoreResults(int shown) {
+		return (pruned && ranking.isFull()) || shown < numResults;
+	}
 
-		Map<Integer, Double> result = new LinkedHashMap<Integer, Double>();
-		for (Iterator<Map.Entry<Integer, Double>> it = list.iterator(); it.hasNext();) {
-			Map.Entry<Integer, Double> entry = (Map.Entry<Integer, Double>) it.next();
-			DecimalFormat twoDForm = new DecimalFormat("#.##");
-			result.put(entry.getKey(), Double.valueOf(twoDForm.format(entry.getValue())));
+	// Returns the k best scoring documents, best first. The first request only
+	// ranks what it asks for; paging past it ranks every result once and keeps
+	// that ranking, so the returned TopK may hold more than k documents.
+	public TopK topK(int k) {
+		if (pruned) {
+			if (k <= ranking.size() || !ranking.isFull())
+				return ranking;
+			cosineScore();
 		}
-
-		return result;
+		k = Math.min(k, numResults);
+		if (ranking == null || ranking.size() < k) {
+			TopK top = new TopK(ranking == null ? k : numResults);
+			for (int i = 0; i < numResults; i++)
+				top.offer(results[i], scores[results[i]]);
+			ranking = top;
+		}
+		return ranking;
 	}
 
 	public HashSet<Integer> getRelevantDocs() {
@@ -242,87 +311,92 @@ public class Query {
 	}
 
 	public void rocchio() {
-		// Initialize the vectors for use in the Rocchio algorithm.
-		HashMap<String, Double> relevantDocsVector = new HashMap<String, Double>();
-		HashMap<String, Double> nonRelevantDocsVector = new HashMap<String, Double>();
-		int termsAdded = 0;
-
-		// Expand the query vector by adding (term, 0.0) pairs for all
-		// distinct terms found in relevant documents that are not already a
-		// part of the query vector. Terms already a part of the query vector
-		// keep their weights.
-		for (Integer docId : relevantDocs) {
-			HashMap<String, Double> weights = (HashMap<String, Double>) corpus.getDocument(docId).getWeights();
-			for (String termString : weights.keySet()) {
-				if (!queryVector.containsKey(termString)) {
-					queryVector.put(termString, 0.0);
-					++termsAdded;
-				}
-				// Populate the relevant docs vector with either zero weight if
-				// the term is not already in the vector. Otherwise, add the
-				// weight to the existing term in the vector.
-				Double wt = weights.get(termString);
-				if (!relevantDocsVector.containsKey(termString)) {
-					relevantDocsVector.put(termString, wt);
-					nonRelevantDocsVector.put(termString, 0.0);
-				} else
-					relevantDocsVector.put(termString, relevantDocsVector.get(termString) + wt);
-			}
-		} // end for (Integer docId : relevantDocs)
-
-		System.out.println(termsAdded + " terms added to query. " + queryVector.size() + " total.");
-
-		for (Integer docId : nonRelevantDocs) {
-			HashMap<String, Double> weights = (HashMap<String, Double>) corpus.getDocument(docId).getWeights();
-			for (String termString : weights.keySet()) {
-				// Only get weights and sum weights for terms that appear in the
-				// relevant docs vector, which should have the same terms in it
-				// as the non-relevant docs vector. Terms that appear only in
-				// non-relevant documents will result in negative weights, which
-				// would be zeroed out anyway.
-				if (nonRelevantDocsVector.containsKey(termString)) {
-					Double wt = weights.get(termString);
-					nonRelevantDocsVector.put(termString, nonRelevantDocsVector.get(termString) + wt);
-				}
+		refineQuery();
+		cosineScore();
+	}
+
+	// Refines the query, then finds only the k best documents, as
+	// executeQuery(k) does.
+	public void rocchio(int k) {
+		refineQuery();
+		maxScore(k);
+	}
+
+	private void refineQuery() {
+		// Sum the vectors of the relevant and of the non-relevant documents.
+		SparseVector relevantDocsVector = SparseVector.EMPTY;
+		for (Integer docId : relevantDocs)
+			relevantDocsVector = relevantDocsVector.plus(corpus.getDocument(docId).getVector());
+		SparseVector nonRelevantDocsVector = SparseVector.EMPTY;
+		for (Integer docId : nonRelevantDocs)
+			nonRelevantDocsVector = nonRelevantDocsVector.plus(corpus.getDocument(docId).getVector());
+
+		// The difference of the two centroids, for the terms of the relevant
+		// documents only: terms found only in non-relevant documents would
+		// come out negative and be zeroed anyway. Both vectors are walked in
+		// step.
+		double relevantScale = beta / (1 + relevantDocs.size());
+		double nonRelevantScale = gamma / (1 + nonRelevantDocs.size());
+		double[] centroid = new double[relevantDocsVector.size()];
+		for (int i = 0, j = 0; i < centroid.length; i++) {
+			int termId = relevantDocsVector.termId(i);
+			while (j < nonRelevantDocsVector.size() && nonRelevantDocsVector.termId(j) < termId)
+				j++;
+			double nonRelevant = 0.0;
+			if (j < nonRelevantDocsVector.size() && nonRelevantDocsVector.termId(j) == termId)
+				nonRelevant = nonRelevantDocsVector.weight(j);
+			centroid[i] = relevantScale * relevantDocsVector.weight(i) - nonRelevantScale * nonRelevant;
+		}
+
+		// The query's own terms keep alpha times their weight, plus the
+		// difference of the centroids if they have one (phrases, for
+		// instance, do not). Terms whose weight drops to zero are dropped.
+		Map<String, Double> refined = new HashMap<String, Double>();
+		boolean[] inQuery = new boolean[centroid.length];
+		for (Map.Entry<String, Double> e : queryVector.entrySet()) {
+			double value = alpha * e.getValue();
+			int termId = corpus.getTermId(e.getKey());
+			int i = termId < 0 ? -1 : relevantDocsVector.indexOf(termId);
+			if (i >= 0) {
+				value += centroid[i];
+				inQuery[i] = true;
 			}
-		} // end for (Integer docId : nonRelevantDocs)
-
-		// Set Rocchio parameters.
-		double alpha = 1.0;
-		double beta = 0.75;
-		double lambda = 0.25;
-
-		// Calculate the 3 terms in the formula.
-		for (String termString : queryVector.keySet())
-			queryVector.put(termString, alpha * queryVector.get(termString));
-		for (String termString : relevantDocsVector.keySet())
-			relevantDocsVector.put(termString, beta / (1 + relevantDocs.size()) * relevantDocsVector.get(termString));
-		for (String termString : nonRelevantDocsVector.keySet())
-			nonRelevantDocsVector.put(termString,
-					lambda / (1 + nonRelevantDocs.size()) * nonRelevantDocsVector.get(termString));
-
-		// Final summation to form the modified queryVector.
+			if (value > 0.0)
+				refined.put(e.getKey(), value);
+		}
+
+		// Expand the query with the new terms that weigh most in the
+		// centroid, so that each round adds a bounded number of postings to
+		// walk.
+		TopK expansion = new TopK(Math.max(0, Math.min(expansionTerms, centroid.length)));
+		String[] strings = new String[centroid.length];
+		for (int i = 0; i < centroid.length; i++) {
+			if (inQuery[i] || centroid[i] <= 0.0 || centroid[i] < expansion.threshold())
+				continue;
+			strings[i] = corpus.getTermString(relevantDocsVector.termId(i));
+			if (!skipStopWords || !corpus.stopWord(strings[i]))
+				expansion.offer(i, centroid[i]);
+		}
+		for (int rank = 0; rank < expansion.size(); rank++) {
+			int i = expansion.getId(rank);
+			refined.put(strings[i], centroid[i]);
+		}
+		if (verbose)
+			System.out.println(expansion.size() + " terms added to query. " + refined.size() + " total.");
+
+		queryVector = refined;
 		queryDistance = 0.0;
-		for (String termString : queryVector.keySet()) {
-			double value = queryVector.get(termString) + relevantDocsVector.get(termString)
-					- nonRelevantDocsVector.get(termString);
-			if (value < 0.0)
-				value = 0.0;
-			queryVector.put(termString, value);
+		for (double value : queryVector.values())
 			queryDistance += value * value;
-		}
 		queryDistance = Math.sqrt(queryDistance);
 		phrasePositions.clear();
-
-		docScores.clear();
-		for (String termString : queryVector.keySet())
-			for (Integer docId : corpus.getTerm(termString).getPostings().keySet())
-				docScores.put(docId, 0.0);
-
-		cosineScore();
 	}
 
 	public Map<Integer, Double> getDocScores() {
+		TopK all = topK(numResults);
+		Map<Integer, Double> docScores = new LinkedHashMap<Integer, Double>();
+		for (int rank = 0; rank < all.size(); rank++)
+			docScores.put(all.getId(rank), all.getScore(rank));
 		return docScores;
 	}
 
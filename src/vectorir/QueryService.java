@@ -0,0 +1,98 @@
+package vectorir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs searches against one Corpus from many threads at once. The corpus is
+// frozen when the service is created, so nothing can change it while
+// searches run. Each search gets its own Query, and with it its own query
+// vector, postings cursors and top k heap. The only state the searches share
+// is the corpus's stem and phrase caches, which are synchronized.
+
+public class QueryService {
+
+	private final Corpus corpus;
+	private final ExecutorService pool;
+	private final int threads;
+
+	public QueryService(Corpus corpus, int threads) {
+		corpus.freeze();
+		this.corpus = corpus;
+		this.threads = threads;
+		this.pool = Executors.newFixedThreadPool(threads);
+	}
+
+	public Corpus getCorpus() {
+		return corpus;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	// Search on the calling thread.
+	public SearchResult search(String text, int k) {
+		long start = System.nanoTime();
+		Query query = new Query(corpus);
+		query.setVerbose(false);
+		if (!query.prepareQuery(text))
+			throw new IllegalArgumentException("Unmatched quotation mark, or a single word in quotes: " + text);
+		query.executeQuery(k);
+		TopK top = query.topK(k);
+		return new SearchResult(text, top, System.nanoTime() - start);
+	}
+
+	// Search, then refine the query with Rocchio relevance feedback from the
+	// given documents, on the calling thread.
+	public SearchResult feedback(String text, int[] relevant, int[] nonRelevant, int k) {
+		long start = System.nanoTime();
+		Query query = new Query(corpus);
+		query.setVerbose(false);
+		if (!query.prepareQuery(text))
+			throw new IllegalArgumentException("Unmatched quotation mark, or a single word in quotes: " + text);
+		query.executeQuery(k);
+		for (int id : relevant)
+			query.addRelevantDocs(id);
+		for (int id : nonRelevant)
+			query.addNonRelevantDocs(id);
+		query.rocchio(k);
+		TopK top = query.topK(k);
+		return new SearchResult(text, top, System.nanoTime() - start);
+	}
+
+	// Search on one of the service's threads.
+	public Future<SearchResult> submit(final String text, final int k) {
+		return pool.submit(new Callable<SearchResult>() {
+			public SearchResult call() {
+				return search(text, k);
+			}
+		});
+	}
+
+	// Run a batch of searches in parallel, returning the results in the order
+	// of the queries.
+	public List<SearchResult> searchAll(List<String> texts, int k) throws InterruptedException {
+		List<Future<SearchResult>> futures = new ArrayList<Future<SearchResult>>(texts.size());
+		for (String text : texts)
+			futures.add(submit(text, k));
+		List<SearchResult> results = new ArrayList<SearchResult>(texts.size());
+		try {
+			for (Future<SearchResult> future : futures)
+				results.add(future.get());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		return results;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
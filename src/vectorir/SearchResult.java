@@ -0,0 +1,50 @@
+package vectorir;
+
+import java.util.Arrays;
+
+// The k best documents for one query, best first, as returned by
+// QueryService. Immutable, so it can be handed between threads freely.
+
+public class SearchResult {
+
+	private final String query;
+	private final int[] ids;
+	private final double[] scores;
+	private final long nanos;
+
+	SearchResult(String query, TopK top, long nanos) {
+		this.query = query;
+		this.ids = new int[top.size()];
+		this.scores = new double[top.size()];
+		for (int rank = 0; rank < ids.length; rank++) {
+			ids[rank] = top.getId(rank);
+			scores[rank] = top.getScore(rank);
+		}
+		this.nanos = nanos;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	public int getId(int rank) {
+		return ids[rank];
+	}
+
+	public double getScore(int rank) {
+		return scores[rank];
+	}
+
+	public int[] getIds() {
+		return Arrays.copyOf(ids, ids.length);
+	}
+
+	// How long the search took to evaluate, in nanoseconds.
+	public long getNanos() {
+		return nanos;
+	}
+}
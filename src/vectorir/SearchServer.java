@@ -0,0 +1,446 @@
+package vectorir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+// A headless HTTP front end to the search engine, answering in JSON:
+//
+// GET  /search?q=oil+prices&k=10         the k best documents for a query
+// POST /search?k=10                      a batch, one query per line of the
+//                                        body, searched in parallel
+// GET  /feedback?q=...&relevant=1,2&nonrelevant=3&k=10
+//                                        the query refined by Rocchio
+// GET  /categorize?topic=acq&features=50 Bernoulli categorization of the
+//                                        test set, if training data was given
+// GET  /classify?text=...                the topics of a new document, by a
+// POST /classify                         saved CategoryModel; the text may
+//                                        also be sent as the body
+// GET  /metrics                          request counts and latency
+//                                        percentiles per endpoint
+//
+// Requests are handled by a bounded pool of workers with a bounded queue;
+// once both are full the server stops accepting connections until a worker
+// frees up, so load beyond capacity waits instead of piling up in memory.
+//
+// Usage: SearchServer [-port 8080] [-workers n] [-queue n] [-index corpus.idx|dir]
+//                     [-train reut2-000.xml ...] [-model file] [-scheme name]
+
+public class SearchServer {
+
+	public static void main(String[] args) throws Exception {
+		int port = 8080;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int queue = 64;
+		String index = "corpus.idx";
+		String model = null;
+		String scheme = null;
+		List<String> training = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-port"))
+				port = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-workers"))
+				workers = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-queue"))
+				queue = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-index"))
+				index = args[++i];
+			else if (args[i].equals("-model"))
+				model = args[++i];
+			else if (args[i].equals("-scheme"))
+				scheme = args[++i];
+			else if (args[i].equals("-train")) {
+				while (i + 1 < args.length && !args[i + 1].startsWith("-"))
+					training.add(args[++i]);
+			} else
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+
+		Corpus categorization = null;
+		if (!training.isEmpty()) {
+			categorization = new IndexingPipeline(workers) {
+				protected CorpusParser newParser() {
+					return new ParseForCategorization();
+				}
+			}.index(training.toArray(new String[training.size()]));
+			categorization.freeze();
+		}
+
+		// A directory holds the segments of a SegmentedCorpus.
+		Corpus corpus = new File(index).isDirectory() ? new SegmentedCorpus(index, workers) : new MappedCorpus(index);
+		if (scheme != null)
+			corpus.setWeightingScheme(WeightingScheme.forName(scheme));
+		SearchServer server = new SearchServer(corpus, categorization, port, workers, queue);
+		server.setModel(model);
+		server.start();
+		System.out.println("Serving " + index + " on port " + port + " with " + workers + " workers");
+	}
+
+	private static final int DEFAULT_K = 10;
+	private static final int MAX_K = 1000;
+	private static final int DEFAULT_FEATURES = 50;
+	// A batch is searched by the request's own worker, so these bound how
+	// long one request can hold on to it.
+	private static final int MAX_BATCH = 100;
+	private static final int MAX_BODY = 1 << 20;
+
+	private final QueryService service;
+	private final Corpus categorization;
+	private final HttpServer server;
+	private final ThreadPoolExecutor workers;
+	private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<String, LatencyHistogram>();
+	private final Map<String, String> categorizations = new HashMap<String, String>();
+	private String modelFile;
+	private CategoryModel model;
+
+	public SearchServer(Corpus corpus, Corpus categorization, int port, int workers, int queue) throws IOException {
+		this.service = new QueryService(corpus, workers);
+		this.categorization = categorization;
+		this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queue), new ThreadPoolExecutor.CallerRunsPolicy());
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.server.setExecutor(this.workers);
+
+		handle("/search", new Endpoint() {
+			String respond(HttpExchange exchange, Map<String, String> params) throws Exception {
+				int k = getK(params);
+				if (exchange.getRequestMethod().equals("POST")) {
+					List<String> batch = new ArrayList<String>();
+					for (String line : readBody(exchange).split("\n"))
+						if (line.trim().length() > 0)
+							batch.add(line.trim());
+					if (batch.size() > MAX_BATCH)
+						throw new IllegalArgumentException("A batch may hold at most " + MAX_BATCH + " queries");
+					StringBuilder json = new StringBuilder("[");
+					for (SearchResult result : service.searchAll(batch, k)) {
+						if (json.length() > 1)
+							json.append(',');
+						appendResult(json, result);
+					}
+					return json.append(']').toString();
+				}
+				StringBuilder json = new StringBuilder();
+				appendResult(json, service.search(require(params, "q"), k));
+				return json.toString();
+			}
+		});
+
+		handle("/feedback", new Endpoint() {
+			String respond(HttpExchange exchange, Map<String, String> params) throws Exception {
+				int[] relevant = getDocIds(params, "relevant");
+				int[] nonRelevant = getDocIds(params, "nonrelevant");
+				StringBuilder json = new StringBuilder();
+				appendResult(json, service.feedback(require(params, "q"), relevant, nonRelevant, getK(params)));
+				return json.toString();
+			}
+		});
+
+		handle("/categorize", new Endpoint() {
+			String respond(HttpExchange exchange, Map<String, String> params) throws Exception {
+				if (SearchServer.this.categorization == null)
+					throw new IllegalStateException("The server was started without training data");
+				String topic = require(params, "topic");
+				return categorize(topic, getFeatures(params));
+			}
+		});
+
+		handle("/classify", new Endpoint() {
+			String respond(HttpExchange exchange, Map<String, String> params) throws Exception {
+				String text = exchange.getRequestMethod().equals("POST") ? readBody(exchange) : require(params,
+						"text");
+				long start = System.nanoTime();
+				CategoryModel m = getModel();
+				double[] scores = m.score(text);
+				String[] topics = m.getTopics();
+				StringBuilder json = new StringBuilder("{\"topics\":[");
+				boolean first = true;
+				for (int t = 0; t < topics.length; t++)
+					if (scores[t] > 0) {
+						json.append(first ? "" : ",").append("{\"topic\":").append(quote(topics[t]));
+						json.append(",\"score\":").append(number(scores[t])).append('}');
+						first = false;
+					}
+				json.append("],\"micros\":").append((System.nanoTime() - start) / 1000);
+				return json.append('}').toString();
+			}
+		});
+
+		handle("/metrics", new Endpoint() {
+			String respond(HttpExchange exchange, Map<String, String> params) {
+				return metrics();
+			}
+		});
+	}
+
+	// The category model to classify with, loaded when first needed.
+	public synchronized void setModel(String file) {
+		this.modelFile = file;
+		this.model = null;
+	}
+
+	private synchronized CategoryModel getModel() throws IOException {
+		if (modelFile == null)
+			throw new IllegalStateException("The server was started without a category model");
+		if (model == null)
+			model = CategoryModel.read(modelFile);
+		return model;
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		workers.shutdown();
+		service.shutdown();
+	}
+
+	// A handler that parses the query string, times the request and turns
+	// exceptions into error responses.
+	private abstract class Endpoint implements HttpHandler {
+		LatencyHistogram latency;
+
+		abstract String respond(HttpExchange exchange, Map<String, String> params) throws Exception;
+
+		public void handle(HttpExchange exchange) throws IOException {
+			long start = System.nanoTime();
+			int status = 200;
+			String body;
+			try {
+				body = respond(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+			} catch (TooLargeException e) {
+				status = 413;
+				body = error(e);
+			} catch (IllegalArgumentException e) {
+				status = 400;
+				body = error(e);
+			} catch (IllegalStateException e) {
+				// The server was started without what the endpoint needs.
+				status = 503;
+				body = error(e);
+			} catch (Exception e) {
+				status = 500;
+				body = error(e);
+			}
+			byte[] bytes = body.getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream out = exchange.getResponseBody();
+			try {
+				out.write(bytes);
+			} finally {
+				out.close();
+			}
+			latency.record(System.nanoTime() - start);
+		}
+	}
+
+	private void handle(String path, Endpoint endpoint) {
+		endpoint.latency = new LatencyHistogram();
+		latencies.put(path, endpoint.latency);
+		server.createContext(path, endpoint);
+	}
+
+	private void appendResult(StringBuilder json, SearchResult result) {
+		json.append("{\"query\":").append(quote(result.getQuery()));
+		json.append(",\"micros\":").append(result.getNanos() / 1000);
+		json.append(",\"results\":[");
+		for (int rank = 0; rank < result.size(); rank++) {
+			Document doc = service.getCorpus().getDocument(result.getId(rank));
+			if (rank > 0)
+				json.append(',');
+			json.append("{\"id\":").append(result.getId(rank));
+			json.append(",\"score\":").append(number(result.getScore(rank)));
+			json.append(",\"title\":").append(quote(doc == null ? null : doc.getTitle())).append('}');
+		}
+		json.append("]}");
+	}
+
+	// Feature selection takes seconds, so each topic is only evaluated once.
+	private String categorize(String topic, int numFeatures) {
+		String key = topic + "/" + numFeatures;
+		synchronized (categorizations) {
+			if (categorizations.containsKey(key))
+				return categorizations.get(key);
+		}
+
+		String[] features = categorization.featureSelection(topic, numFeatures);
+		Map<Integer, Boolean> marked = categorization.testCategorization(topic, features);
+		int[] stats = categorization.countStats(topic, marked); // {tp, tn, fp, fn}
+		double precision = stats[0] / (double) (stats[0] + stats[2]);
+		double recall = stats[0] / (double) (stats[0] + stats[3]);
+		double f1 = 2 * precision * recall / (precision + recall);
+
+		StringBuilder json = new StringBuilder("{\"topic\":").append(quote(topic));
+		json.append(",\"features\":[");
+		for (int i = 0; i < features.length; i++)
+			json.append(i > 0 ? "," : "").append(quote(features[i]));
+		json.append("],\"tp\":").append(stats[0]).append(",\"tn\":").append(stats[1]);
+		json.append(",\"fp\":").append(stats[2]).append(",\"fn\":").append(stats[3]);
+		json.append(",\"precision\":").append(number(precision)).append(",\"recall\":").append(number(recall));
+		json.append(",\"f1\":").append(number(f1)).append('}');
+		synchronized (categorizations) {
+			categorizations.put(key, json.toString());
+		}
+		return json.toString();
+	}
+
+	private String metrics() {
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, LatencyHistogram> e : latencies.entrySet()) {
+			LatencyHistogram h = e.getValue();
+			if (json.length() > 1)
+				json.append(',');
+			json.append(quote(e.getKey())).append(":{\"count\":").append(h.getCount());
+			json.append(",\"mean_us\":").append(Math.round(h.getMeanMicros()));
+			json.append(",\"p50_us\":").append(h.getPercentileMicros(0.5));
+			json.append(",\"p90_us\":").append(h.getPercentileMicros(0.9));
+			json.append(",\"p99_us\":").append(h.getPercentileMicros(0.99));
+			json.append(",\"max_us\":").append(h.getMaxMicros()).append('}');
+		}
+		json.append(",\"workers\":{\"active\":").append(workers.getActiveCount());
+		json.append(",\"queued\":").append(workers.getQueue().size());
+		json.append(",\"completed\":").append(workers.getCompletedTaskCount()).append('}');
+		return json.append('}').toString();
+	}
+
+	private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<String, String>();
+		if (query == null)
+			return params;
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq < 0)
+				params.put(URLDecoder.decode(pair, "UTF-8"), "");
+			else
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+						URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+		}
+		return params;
+	}
+
+	private static String require(Map<String, String> params, String name) {
+		String value = params.get(name);
+		if (value == null || value.length() == 0)
+			throw new IllegalArgumentException("Missing parameter " + name);
+		return value;
+	}
+
+	private static int getK(Map<String, String> params) {
+		if (!params.containsKey("k"))
+			return DEFAULT_K;
+		return getInt(params, "k", 1, MAX_K);
+	}
+
+	private int getFeatures(Map<String, String> params) {
+		int numTerms = categorization.getNumTerms();
+		if (!params.containsKey("features"))
+			return Math.min(DEFAULT_FEATURES, numTerms);
+		return getInt(params, "features", 1, numTerms);
+	}
+
+	// A whole number parameter from min to max.
+	private static int getInt(Map<String, String> params, String name, int min, int max) {
+		int value;
+		try {
+			value = Integer.parseInt(params.get(name));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be a whole number");
+		}
+		if (value < min || value > max)
+			throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+		return value;
+	}
+
+	private int[] getDocIds(Map<String, String> params, String name) {
+		String value = params.get(name);
+		if (value == null || value.length() == 0)
+			return new int[0];
+		String[] parts = value.split(",");
+		int[] ids = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			ids[i] = Integer.parseInt(parts[i].trim());
+			if (service.getCorpus().getDocument(ids[i]) == null)
+				throw new IllegalArgumentException("No document " + ids[i]);
+		}
+		return ids;
+	}
+
+	// A request body too large to be read.
+	private static class TooLargeException extends IllegalArgumentException {
+		private static final long serialVersionUID = 6243917530215784610L;
+
+		TooLargeException(String message) {
+			super(message);
+		}
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int n; (n = in.read(buffer)) > 0;) {
+			bytes.write(buffer, 0, n);
+			if (bytes.size() > MAX_BODY)
+				throw new TooLargeException("The request body may be at most " + MAX_BODY + " bytes");
+		}
+		return bytes.toString("UTF-8");
+	}
+
+	private static String error(Exception e) {
+		return "{\"error\":" + quote(e.getMessage() != null ? e.getMessage() : e.toString()) + "}";
+	}
+
+	private static String number(double d) {
+		return Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d);
+	}
+
+	private static String quote(String s) {
+		if (s == null)
+			return "null";
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for (char c : s.toCharArray()) {
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,583 @@
+package vectorir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// A Corpus that documents can be added to and deleted from while it is being
+// searched, without rebuilding the index. It is kept as a list of segments,
+// each an index file of its own written by MappedCorpus, plus the ids of the
+// documents deleted since. Adding a batch of documents writes them as a new
+// segment; deleting one only marks it. Once there are more segments than the
+// merge factor, a background thread merges the smallest of them into one,
+// leaving the deleted documents out for good.
+//
+// Nothing stored depends on the rest of the collection, so nothing ever has
+// to be weighed again. Segments keep document vectors of tf alone, with an
+// idf of 1. Postings are weighed as each term is read: its postings are
+// gathered from every segment, the deleted documents dropped, and the rest
+// weighed with the idf of the collection as it is at that moment. The idf
+// of every term, and the documents' lengths under the cosine-normalized
+// schemes, are worked out again after each change, from the frequencies in
+// the postings, the first time a search needs them. A document's vector is
+// given the current idf as it is read. Each change forgets the cached
+// phrases.
+//
+// The directory holds the segment files and a manifest naming them, one per
+// line, followed by a line listing the deleted document ids. The manifest is
+// replaced as a whole after every change, so the index on disk is always
+// one that was searched.
+//
+// Like MappedCorpus it is frozen from the start, so the Corpus methods that
+// build an index in memory throw; documents come in through addDocuments.
+// Once closed it takes no more changes.
+//
+// Usage: SegmentedCorpus dir add file.xml ...   index the files as a segment
+//        SegmentedCorpus dir delete id ...      delete documents
+//        SegmentedCorpus dir merge              merge every segment into one
+//        SegmentedCorpus dir search query       show the 10 best documents
+
+public class SegmentedCorpus extends Corpus {
+
+	private static final long serialVersionUID = 2280474853637905714L;
+	static final String MANIFEST = "segments";
+	public static final int DEFAULT_MERGE_FACTOR = 8;
+
+	private final File directory;
+	private final int threads;
+	private volatile int mergeFactor = DEFAULT_MERGE_FACTOR;
+	private volatile WeightingScheme scheme;
+	private volatile State state;
+	// Never shrinks, so that accumulators sized by it hold the postings of
+	// any term read before.
+	private volatile int maxDocId = 0;
+	private int generation = 0;
+	private boolean merging = false;
+	private boolean closed = false;
+	private final Object mergeLock = new Object();
+	private final transient ExecutorService merger;
+
+	// Term ids are given out across segments in the order terms first appear.
+	private final Map<String, Integer> termIds = new HashMap<String, Integer>();
+	private final List<String> termStrings = new ArrayList<String>();
+
+	// One index file, and the id across segments of each of its terms.
+	private static class Segment {
+		final String file;
+		final MappedCorpus corpus;
+		final int[] termIds;
+
+		Segment(String file, MappedCorpus corpus, int[] termIds) {
+			this.file = file;
+			this.corpus = corpus;
+			this.termIds = termIds;
+		}
+	}
+
+	// The segments and deleted documents at one moment. A search reads the
+	// current state once per term and never sees it change; every change
+	// publishes a new one.
+	private static class State {
+		final List<Segment> segments;
+		final BitSet deleted;
+		final int numDocs;
+		private double[] idfs;
+		private DocumentStats stats;
+
+		State(List<Segment> segments, BitSet deleted) {
+			this.segments = Collections.unmodifiableList(segments);
+			this.deleted = deleted;
+			int n = 0;
+			for (Segment seg : segments)
+				n += seg.corpus.getNumDocuments();
+			numDocs = n - deleted.cardinality();
+		}
+
+		// The idf that the cosine-normalized schemes weigh each term by, by
+		// id, counting only the documents not deleted.
+		synchronized double[] getIdfs() {
+			if (idfs == null) {
+				int numTerms = 0;
+				for (Segment seg : segments)
+					for (int id : seg.termIds)
+						numTerms = Math.max(numTerms, id + 1);
+				int[] docFreqs = new int[numTerms];
+				for (Segment seg : segments) {
+					int[] local = seg.corpus.getDocFreqs(deleted);
+					for (int ordinal = 0; ordinal < local.length; ordinal++)
+						docFreqs[seg.termIds[ordinal]] += local[ordinal];
+				}
+				idfs = new double[numTerms];
+				for (int id = 0; id < numTerms; id++)
+					idfs[id] = Corpus.idf(numDocs, docFreqs[id]);
+			}
+			return idfs;
+		}
+
+		// The statistics of the documents not deleted, gathered from the
+		// segments the first time they are needed. Their lengths are found
+		// under the current idf.
+		synchronized DocumentStats getStats(int maxDocId) {
+			if (stats == null) {
+				WeightingScheme.Cosine[] schemes = WeightingScheme.COSINE;
+				int[] maxFreqs = new int[maxDocId + 1];
+				int[] numTokens = new int[maxDocId + 1];
+				int[] numTerms = new int[maxDocId + 1];
+				double[][] lengths = new double[schemes.length][maxDocId + 1];
+				for (Segment seg : segments) {
+					DocumentStats from = seg.corpus.getDocumentStats();
+					for (int docId = 0; docId <= seg.corpus.getMaxDocId(); docId++) {
+						if (!seg.corpus.containsDocument(docId) || deleted.get(docId))
+							continue;
+						maxFreqs[docId] = from.getMaxFreq(docId);
+						numTokens[docId] = from.getNumTokens(docId);
+						numTerms[docId] = from.getNumTerms(docId);
+					}
+				}
+				double[] idfs = getIdfs();
+				for (Segment seg : segments) {
+					double[] local = new double[seg.termIds.length];
+					for (int ordinal = 0; ordinal < local.length; ordinal++)
+						local[ordinal] = idfs[seg.termIds[ordinal]];
+					seg.corpus.addSquaredWeights(local, maxFreqs, deleted, lengths);
+				}
+				for (int s = 0; s < schemes.length; s++)
+					for (int docId = 0; docId <= maxDocId; docId++)
+						lengths[s][docId] = Math.sqrt(lengths[s][docId]);
+				stats = new DocumentStats(numDocs, maxFreqs, numTokens, numTerms, lengths);
+			}
+			return stats;
+		}
+	}
+
+	// Open the index in a directory, or start an empty one there. Merges run
+	// on threads threads.
+	public SegmentedCorpus(String directory, int threads) throws IOException {
+		this.directory = new File(directory);
+		this.threads = threads;
+		if (!this.directory.isDirectory() && !this.directory.mkdirs())
+			throw new IOException("Cannot create " + directory);
+
+		List<Segment> segments = new ArrayList<Segment>();
+		BitSet deleted = new BitSet();
+		File manifest = new File(this.directory, MANIFEST);
+		if (manifest.exists()) {
+			BufferedReader in = new BufferedReader(new FileReader(manifest));
+			try {
+				for (String line = in.readLine(); line != null; line = in.readLine()) {
+					if (line.startsWith("deleted")) {
+						for (String id : line.substring("deleted".length()).trim().split(" +"))
+							if (id.length() > 0)
+								deleted.set(Integer.parseInt(id));
+					} else if (line.length() > 0) {
+						segments.add(openSegment(line));
+						generation = Math.max(generation, segmentNumber(line) + 1);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+		for (Segment seg : segments)
+			maxDocId = Math.max(maxDocId, seg.corpus.getMaxDocId());
+		state = new State(segments, deleted);
+
+		merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "segment-merger");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		freeze();
+	}
+
+	public void setMergeFactor(int mergeFactor) {
+		if (mergeFactor < 2)
+			throw new IllegalArgumentException("Merge factor must be at least 2");
+		this.mergeFactor = mergeFactor;
+	}
+
+	public int getNumSegments() {
+		return state.segments.size();
+	}
+
+	// Wait for a running merge to finish and stop merging in the background.
+	// The corpus can still be searched.
+	public void close() throws InterruptedException {
+		synchronized (this) {
+			closed = true;
+		}
+		merger.shutdown();
+		merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	// Updates Methods
+
+	// Index a batch of new documents, such as IndexingPipeline parses into an
+	// in-memory Corpus, as a segment of its own. Their ids must not be in use,
+	// not even by a deleted document that has not been merged away yet.
+	public synchronized void addDocuments(Corpus batch) throws IOException {
+		checkOpen();
+		State s = state;
+		for (int docId = 0; docId <= batch.getMaxDocId(); docId++)
+			if (batch.containsDocument(docId))
+				for (Segment seg : s.segments)
+					if (seg.corpus.containsDocument(docId))
+						throw new IllegalArgumentException("Document " + docId + " is already in the index");
+		if (batch.getNumDocuments() == 0)
+			return;
+
+		Segment added = writeSegment(batch);
+		List<Segment> segments = new ArrayList<Segment>(s.segments);
+		segments.add(added);
+		maxDocId = Math.max(maxDocId, added.corpus.getMaxDocId());
+		publish(new State(segments, s.deleted));
+		if (!merging && segments.size() > mergeFactor) {
+			merging = true;
+			merger.submit(new Runnable() {
+				public void run() {
+					try {
+						merge(mergeFactor);
+					} catch (IOException e) {
+						e.printStackTrace();
+					} finally {
+						synchronized (SegmentedCorpus.this) {
+							merging = false;
+						}
+					}
+				}
+			});
+		}
+	}
+
+	// Delete a document from the index, returning false if it is not there.
+	public synchronized boolean deleteDocument(int docId) throws IOException {
+		checkOpen();
+		if (!containsDocument(docId))
+			return false;
+		BitSet deleted = (BitSet) state.deleted.clone();
+		deleted.set(docId);
+		publish(new State(state.segments, deleted));
+		return true;
+	}
+
+	// Merge every segment into one, on this thread.
+	public void merge() throws IOException {
+		synchronized (this) {
+			checkOpen();
+		}
+		merge(Integer.MAX_VALUE);
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("Corpus is closed");
+	}
+
+	// Merge up to count of the smallest segments into one. Searches go on
+	// reading the old segments until the merged one replaces them.
+	private void merge(int count) throws IOException {
+		synchronized (mergeLock) {
+			State s = state;
+			List<Segment> chosen = new ArrayList<Segment>(s.segments);
+			if (chosen.size() < 2 && s.deleted.isEmpty())
+				return;
+			Collections.sort(chosen, new Comparator<Segment>() {
+				public int compare(Segment a, Segment b) {
+					return a.corpus.getNumDocuments() - b.corpus.getNumDocuments();
+				}
+			});
+			chosen = chosen.subList(0, Math.min(count, chosen.size()));
+
+			// The documents are copied as they are and weighed again;
+			// postings are copied segment by segment, in document id order
+			// within each, and merged.
+			Corpus merged = new Corpus();
+			for (Segment seg : chosen) {
+				for (int docId = 0; docId <= seg.corpus.getMaxDocId(); docId++)
+					if (seg.corpus.containsDocument(docId) && !s.deleted.get(docId))
+						merged.addDocument(seg.corpus.getDocument(docId));
+				for (int ordinal = 0; ordinal < seg.corpus.getNumTerms(); ordinal++) {
+					Term t = seg.corpus.getTerm(ordinal).without(s.deleted);
+					if (t.getDocFreq() > 0)
+						merged.addPostings(t);
+				}
+			}
+			Segment result = merged.getNumDocuments() == 0 ? null : writeSegment(merged);
+
+			synchronized (this) {
+				State now = state;
+				List<Segment> segments = new ArrayList<Segment>(now.segments);
+				segments.removeAll(chosen);
+				if (result != null)
+					segments.add(result);
+				// The documents deleted before the merge are gone for good.
+				BitSet deleted = (BitSet) now.deleted.clone();
+				for (int docId = s.deleted.nextSetBit(0); docId >= 0; docId = s.deleted.nextSetBit(docId + 1))
+					for (Segment seg : chosen)
+						if (seg.corpus.containsDocument(docId))
+							deleted.clear(docId);
+				publish(new State(segments, deleted));
+			}
+			// Searches still reading them keep their mappings.
+			for (Segment seg : chosen)
+				new File(directory, seg.file).delete();
+		}
+	}
+
+	// Weigh a corpus with an idf of 1, then write it as a new segment and
+	// open it.
+	private Segment writeSegment(Corpus c) throws IOException {
+		double[] idfs = new double[c.getNumTerms()];
+		Arrays.fill(idfs, 1.0);
+		c.calculateTermWeights(threads, idfs);
+		String file = nextSegmentFile();
+		MappedCorpus.write(c, new File(directory, file).getPath());
+		return openSegment(file);
+	}
+
+	private synchronized String nextSegmentFile() {
+		return "segment-" + generation++ + ".idx";
+	}
+
+	private static int segmentNumber(String file) {
+		return Integer.parseInt(file.substring("segment-".length(), file.length() - ".idx".length()));
+	}
+
+	private Segment openSegment(String file) throws IOException {
+		MappedCorpus corpus = new MappedCorpus(new File(directory, file).getPath());
+		int[] ids = new int[corpus.getNumTerms()];
+		synchronized (termIds) {
+			for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+				String term = corpus.getTermString(ordinal);
+				Integer id = termIds.get(term);
+				if (id == null) {
+					id = termStrings.size();
+					termIds.put(term, id);
+					termStrings.add(term);
+				}
+				ids[ordinal] = id;
+			}
+		}
+		return new Segment(file, corpus, ids);
+	}
+
+	// Make a new state the current one and record it in the manifest.
+	private synchronized void publish(State s) throws IOException {
+		state = s;
+		getPhraseCache().clear();
+
+		File temp = new File(directory, MANIFEST + ".tmp");
+		PrintWriter out = new PrintWriter(new FileWriter(temp));
+		try {
+			for (Segment seg : s.segments)
+				out.println(seg.file);
+			out.print("deleted");
+			for (int docId = s.deleted.nextSetBit(0); docId >= 0; docId = s.deleted.nextSetBit(docId + 1))
+				out.print(" " + docId);
+			out.println();
+		} finally {
+			out.close();
+		}
+		File manifest = new File(directory, MANIFEST);
+		if (!temp.renameTo(manifest) && !(manifest.delete() && temp.renameTo(manifest)))
+			throw new IOException("Cannot replace " + manifest);
+	}
+
+	// Documents Methods
+
+	// The document as its segment stores it, with its vector over the term
+	// ids of this corpus, weighed by the current idf, and its current
+	// lengths.
+	@Override
+	public Document getDocument(Integer key) {
+		State s = state;
+		if (key < 0 || s.deleted.get(key))
+			return null;
+		for (Segment seg : s.segments) {
+			if (!seg.corpus.containsDocument(key))
+				continue;
+			double[] idfs = s.getIdfs();
+			Document doc = seg.corpus.getDocument(key);
+			SparseVector local = doc.getVector();
+			int[] ids = new int[local.size()];
+			double[] weights = new double[local.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = seg.termIds[local.termId(i)];
+				weights[i] = local.weight(i) * idfs[ids[i]];
+			}
+			doc.setVector(SparseVector.sorted(ids, weights));
+			DocumentStats stats = s.getStats(maxDocId);
+			for (WeightingScheme scheme : WeightingScheme.COSINE)
+				doc.setLength(scheme, stats.getLength(scheme, key));
+			return doc;
+		}
+		return null;
+	}
+
+	@Override
+	public int getNumDocuments() {
+		return state.numDocs;
+	}
+
+	@Override
+	public boolean containsDocument(int docId) {
+		State s = state;
+		if (docId < 0 || s.deleted.get(docId))
+			return false;
+		for (Segment seg : s.segments)
+			if (seg.corpus.containsDocument(docId))
+				return true;
+		return false;
+	}
+
+	@Override
+	public int getMaxDocId() {
+		return maxDocId;
+	}
+
+	@Override
+	public int getMaxTermFreq(int docId) {
+		return getDocumentStats().getMaxFreq(docId);
+	}
+
+	@Override
+	public double getDocumentLength(int docId) {
+		return getDocumentStats().getLength(WeightingScheme.TFIDF, docId);
+	}
+
+	@Override
+	public DocumentStats getDocumentStats() {
+		return state.getStats(maxDocId);
+	}
+
+	// Terms Methods
+
+	// The term's postings from every segment, without the deleted documents,
+	// weighed by the current idf.
+	@Override
+	public Term getTerm(String key) {
+		State s = state;
+		Term term = null;
+		for (Segment seg : s.segments) {
+			if (seg.corpus.getDocFreq(key) == 0)
+				continue;
+			Term t = seg.corpus.getTerm(key).without(s.deleted);
+			if (term == null)
+				term = t;
+			else
+				term.merge(t);
+		}
+		if (term == null || term.getDocFreq() == 0)
+			return new Term(0);
+		term.setId(getTermId(key));
+		weighTerm(term, getWeightingScheme(), s.getStats(maxDocId), s.numDocs);
+		return term;
+	}
+
+	// Read from the term tables, counting only the deleted documents the
+	// postings hold.
+	@Override
+	public int getDocFreq(String key) {
+		State s = state;
+		int docFreq = 0;
+		for (Segment seg : s.segments) {
+			int segmentFreq = seg.corpus.getDocFreq(key);
+			if (segmentFreq > 0)
+				docFreq += segmentFreq - seg.corpus.countDocs(key, s.deleted);
+		}
+		return docFreq;
+	}
+
+	@Override
+	public Term getTerm(int id) {
+		return getTerm(getTermString(id));
+	}
+
+	@Override
+	public String getTermString(int id) {
+		synchronized (termIds) {
+			return termStrings.get(id);
+		}
+	}
+
+	// Terms keep their ids once deleted from every document.
+	@Override
+	public int getTermId(String key) {
+		synchronized (termIds) {
+			Integer id = termIds.get(key);
+			return id == null ? -1 : id;
+		}
+	}
+
+	@Override
+	public int getNumTerms() {
+		synchronized (termIds) {
+			return termStrings.size();
+		}
+	}
+
+	@Override
+	public WeightingScheme getWeightingScheme() {
+		return scheme == null ? WeightingScheme.TFIDF : scheme;
+	}
+
+	// Postings are weighed as they are read, so this takes effect at once,
+	// even while the corpus is being searched.
+	@Override
+	public void setWeightingScheme(WeightingScheme scheme) {
+		this.scheme = scheme;
+		getPhraseCache().clear();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: SegmentedCorpus dir add file.xml ... | delete id ... | merge | search query");
+			System.exit(1);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		SegmentedCorpus corpus = new SegmentedCorpus(args[0], threads);
+		String[] rest = Arrays.copyOfRange(args, 2, args.length);
+		if (args[1].equals("add")) {
+			corpus.addDocuments(new IndexingPipeline(threads).index(rest));
+		} else if (args[1].equals("delete")) {
+			for (String id : rest)
+				if (!corpus.deleteDocument(Integer.parseInt(id)))
+					System.err.println("No document " + id);
+		} else if (args[1].equals("merge")) {
+			corpus.merge();
+		} else if (args[1].equals("search")) {
+			StringBuilder text = new StringBuilder();
+			for (String word : rest)
+				text.append(word).append(' ');
+			Query q = new Query(corpus);
+			q.setVerbose(false);
+			if (q.prepareQuery(text.toString().trim())) {
+				q.executeQuery(10);
+				TopK top = q.topK(10);
+				for (int i = 0; i < top.size(); i++)
+					System.out.printf("%6d %.4f %s%n", top.getId(i), top.getScore(i),
+							corpus.getDocument(top.getId(i)).getTitle());
+			}
+		} else
+			throw new IllegalArgumentException("Unknown command " + args[1]);
+		corpus.close();
+		System.out.println(corpus.getNumDocuments() + " documents in " + corpus.getNumSegments() + " segments");
+	}
+}
@@ -1,51 +1,43 @@
 package vectorir;
 
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
+import java.util.Arrays;
 
-import org.xml.sax.XMLReader;
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.helpers.XMLReaderFactory;
-import org.xml.sax.helpers.DefaultHandler;
 
 // Modeled after the SAX Quickstart found at:
 // http://sax.sourceforge.net/quickstart.html
 
-public class SimpleParser extends DefaultHandler {
+public class SimpleParser extends CorpusParser {
 
 	public static void main(String args[]) throws Exception {
-		SimpleParser handler = new SimpleParser();
-		XMLReader xr = XMLReaderFactory.createXMLReader();
-		xr.setContentHandler(handler);
-		xr.setErrorHandler(handler);
-
-		// Parse each file provided on the command line.
-		for (int i = 0; i < args.length; i++) {
-			FileReader r = new FileReader(args[i]);
-			xr.parse(new InputSource(r));
+		// Leading options: "-threads N" sets the number of indexing threads,
+		// and "-scheme name" the weighting scheme the index is written with.
+		int threads = Runtime.getRuntime().availableProcessors();
+		WeightingScheme scheme = WeightingScheme.TFIDF;
+		int first = 0;
+		while (first + 1 < args.length && args[first].startsWith("-")) {
+			if (args[first].equals("-threads"))
+				threads = Integer.parseInt(args[first + 1]);
+			else if (args[first].equals("-scheme"))
+				scheme = WeightingScheme.forName(args[first + 1]);
+			else
+				throw new IllegalArgumentException("Unknown option " + args[first]);
+			first += 2;
 		}
 
-		// Using Porter's Stemming Algorithm, transform tokens to terms.
-		handler.corpus.stemTokens();
+		// Parse and stem each file provided on the command line.
+		Corpus corpus = new IndexingPipeline(threads).index(Arrays.copyOfRange(args, first, args.length));
 
-		// Clear out token stores to save space.
-		handler.corpus.clearTokens();
+		// For each <document, term> pair, calculate weights.
+		corpus.setWeightingScheme(scheme);
+		corpus.calculateTermWeights(threads);
 
-		// For each <document, term> pair, calculate weights (tf-idf).
-		handler.corpus.calculateTermWeights();
+		System.out.println(corpus.getNumTerms() + " Distinct terms");
 
-		System.out.println(handler.corpus.getNumTerms() + " Distinct terms");
-
-		// Serialize the Corpus
-		System.out.print("Serializing Corpus...");
+		// Write the Corpus out as a memory-mappable index.
+		System.out.print("Writing Corpus index...");
 		try {
-			FileOutputStream fout = new FileOutputStream("corpus.dat");
-			ObjectOutputStream oos = new ObjectOutputStream(fout);
-			oos.writeObject(handler.corpus);
-			oos.close();
+			MappedCorpus.write(corpus, "corpus.idx");
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -57,10 +49,20 @@ public class SimpleParser extends DefaultHandler {
 	private String currentTag;
 	private Document currentDocument;
 	private StringBuilder sb;
+	private Tokenizer tokenizer = new Tokenizer();
+	private boolean verbose;
 
 	public SimpleParser() {
+		this(true);
+	}
+
+	public SimpleParser(boolean verbose) {
 		super();
+		this.verbose = verbose;
+	}
 
+	public Corpus getCorpus() {
+		return corpus;
 	}
 
 	// //////////////////////////////////////////////////////////////////
@@ -68,12 +70,15 @@ public class SimpleParser extends DefaultHandler {
 	// //////////////////////////////////////////////////////////////////
 
 	public void startDocument() {
-		System.out.println("START DOCUMENT");
+		if (verbose)
+			System.out.println("START DOCUMENT");
 	}
 
 	public void endDocument() {
-		System.out.println("END DOCUMENT");
-		System.out.println(corpus.getNumDocuments() + " Document objects");
+		if (verbose) {
+			System.out.println("END DOCUMENT");
+			System.out.println(corpus.getNumDocuments() + " Document objects");
+		}
 	}
 
 	public void startElement(String uri, String name, String qName, Attributes atts) {
@@ -83,49 +88,41 @@ public class SimpleParser extends DefaultHandler {
 		if (qName.equals("REUTERS")) {
 			Integer id = new Integer(atts.getValue("NEWID"));
 			this.currentDocument = new Document(id);
-			System.out.println("DOCID:" + id);
+			this.tokenizer.reset();
+			if (verbose)
+				System.out.println("DOCID:" + id);
 		} else if ((qName.equals("TITLE") || qName.equals("DATELINE") || qName.equals("BODY")))
 			this.sb = new StringBuilder();
 	}
 
 	public void endElement(String uri, String name, String qName) {
+		// Text between elements belongs to none of them.
+		this.currentTag = "";
+
 		if (qName.equals("TITLE"))
 			this.currentDocument.setTitle(sb.toString().trim());
 		else if (qName.equals("DATELINE"))
 			this.currentDocument.setDateline(sb.toString().trim());
 		else if (qName.equals("BODY")) {
-			// Remove excess white space and chop anything after the final
-			// period.
-			String bodyText = sb.toString().replaceAll("\\s+", " ");
+			// Chop anything after the final period. White space has already
+			// been collapsed as the text arrived.
+			String bodyText = sb.toString();
 			this.currentDocument.setBody(bodyText.substring(0, bodyText.lastIndexOf(".") + 1));
 
-			String[] tokens = sb.toString()
-			// Replace all dashes and slashes with white space.
-					.replaceAll("[\\-\\/]", " ")
-					// Remove all non letters, keeping white space.
-					.replaceAll("[^a-zA-Z\\s]", "")
-					// Convert text to lower case.
-					.toLowerCase()
-					// Split on white space.
-					.split("\\s+");
-
-			// Eliminate stop words.
-			ArrayList<String> tokenList = new ArrayList<String>();
-			for (String s : tokens) {
-				// if (!corpus.stopWord(s))
-				tokenList.add(s);
-			}
-
-			this.currentDocument.setTokens(tokenList);
+			tokenizer.finish();
 
 		} else if (qName.equals("REUTERS")) {
-			this.corpus.addDocument(this.currentDocument);
+			// Using Porter's Stemming Algorithm, transform tokens to terms
+			// right away. Stop words are kept in the index.
+			this.corpus.indexDocument(this.currentDocument, tokenizer, false);
+			if (!verbose)
+				return;
 			System.out.println("TITLE:" + this.currentDocument.getTitle());
 			System.out.println("DATELINE:" + this.currentDocument.getDateline());
 			System.out.println("BODY:" + this.currentDocument.getBody());
 			System.out.print("TOKENS:");
-			for (String s : this.currentDocument.getTokens())
-				System.out.print(s + ",");
+			for (int i = 0; i < tokenizer.size(); i++)
+				System.out.print(tokenizer.getToken(i) + ",");
 			System.out.println("\n");
 		}
 	}
@@ -134,6 +131,10 @@ public class SimpleParser extends DefaultHandler {
 		if (!(this.currentTag.equals("TITLE") || this.currentTag.equals("DATELINE") || this.currentTag.equals("BODY")))
 			return;
 
+		boolean body = this.currentTag.equals("BODY");
+		if (body)
+			tokenizer.feed(ch, start, length);
+
 		for (int i = start; i < start + length; i++) {
 			switch (ch[i]) {
 			case '\\':
@@ -142,8 +143,11 @@ public class SimpleParser extends DefaultHandler {
 			case '"':
 				sb.append("\\\"");
 				break;
+			case ' ':
 			case '\n':
-				sb.append(" ");
+				// Collapse runs of white space in the body.
+				if (!body || sb.length() == 0 || sb.charAt(sb.length() - 1) != ' ')
+					sb.append(" ");
 			case '\r':
 				break;
 			case '\t':
@@ -0,0 +1,110 @@
+package vectorir;
+
+import java.util.Arrays;
+
+// A vector over term ids holding only its nonzero entries: the ids in
+// ascending order and a weight for each. Two of them are combined by
+// walking both id arrays in step, and a single weight is found by binary
+// search, so nothing is hashed or boxed. Vectors are never changed once
+// built.
+
+public final class SparseVector implements java.io.Serializable {
+
+	private static final long serialVersionUID = -3129524305870745826L;
+	public static final SparseVector EMPTY = new SparseVector(new int[0], new double[0]);
+
+	private final int[] termIds;
+	private final double[] weights;
+
+	// The ids must be in ascending order, with no repeats. The arrays are
+	// kept, not copied.
+	public SparseVector(int[] termIds, double[] weights) {
+		if (termIds.length != weights.length)
+			throw new IllegalArgumentException(termIds.length + " ids but " + weights.length + " weights");
+		for (int i = 1; i < termIds.length; i++)
+			if (termIds[i] <= termIds[i - 1])
+				throw new IllegalArgumentException("Term ids out of order at " + i);
+		this.termIds = termIds;
+		this.weights = weights;
+	}
+
+	// Sorts the pairs by id first.
+	public static SparseVector sorted(int[] termIds, double[] weights) {
+		long[] keys = new long[termIds.length];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = (long) termIds[i] << 32 | i;
+		Arrays.sort(keys);
+		int[] ids = new int[keys.length];
+		double[] ws = new double[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			int from = (int) keys[i];
+			ids[i] = termIds[from];
+			ws[i] = weights[from];
+		}
+		return new SparseVector(ids, ws);
+	}
+
+	public int size() {
+		return termIds.length;
+	}
+
+	public int termId(int i) {
+		return termIds[i];
+	}
+
+	public double weight(int i) {
+		return weights[i];
+	}
+
+	// Where the vector holds a term, or a negative number if it does not.
+	public int indexOf(int termId) {
+		return Arrays.binarySearch(termIds, termId);
+	}
+
+	// The weight of a term, 0 if the vector does not hold it.
+	public double get(int termId) {
+		int i = indexOf(termId);
+		return i < 0 ? 0.0 : weights[i];
+	}
+
+	public double norm() {
+		double sum = 0.0;
+		for (double w : weights)
+			sum += w * w;
+		return Math.sqrt(sum);
+	}
+
+	public double dot(SparseVector other) {
+		double sum = 0.0;
+		int i = 0, j = 0;
+		while (i < termIds.length && j < other.termIds.length) {
+			if (termIds[i] < other.termIds[j])
+				i++;
+			else if (termIds[i] > other.termIds[j])
+				j++;
+			else
+				sum += weights[i++] * other.weights[j++];
+		}
+		return sum;
+	}
+
+	// The sum of this vector and another, holding every id of either.
+	public SparseVector plus(SparseVector other) {
+		int[] ids = new int[termIds.length + other.termIds.length];
+		double[] ws = new double[ids.length];
+		int i = 0, j = 0, n = 0;
+		while (i < termIds.length || j < other.termIds.length) {
+			if (j == other.termIds.length || (i < termIds.length && termIds[i] < other.termIds[j])) {
+				ids[n] = termIds[i];
+				ws[n++] = weights[i++];
+			} else if (i == termIds.length || termIds[i] > other.termIds[j]) {
+				ids[n] = other.termIds[j];
+				ws[n++] = other.weights[j++];
+			} else {
+				ids[n] = termIds[i];
+				ws[n++] = weights[i++] + other.weights[j++];
+			}
+		}
+		return new SparseVector(Arrays.copyOf(ids, n), Arrays.copyOf(ws, n));
+	}
+}
@@ -0,0 +1,112 @@
+package vectorir;
+
+// Remembers the Porter stem of each token it has seen, so the handful of
+// words that make up most of any text are only stemmed once. Tokens can be
+// looked up as Strings or straight out of a char buffer such as Tokenizer's,
+// and a hit allocates nothing. The cache is bounded: once it holds capacity
+// tokens, new tokens are still stemmed but no longer remembered. By Zipf's
+// law the tokens seen first are the common ones, so this costs little.
+//
+// A StemCache is not thread-safe.
+
+public class StemCache {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final Stemmer stemmer = new Stemmer();
+	private final int capacity;
+	private final String[] tokens;
+	private final String[] stems;
+	private final int[] hashes;
+	private final int mask;
+	private int size = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	public StemCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public StemCache(int capacity) {
+		this.capacity = capacity;
+		// Open addressing in a table at most half full.
+		int tableSize = Integer.highestOneBit(Math.max(2, 2 * capacity - 1)) << 1;
+		this.tokens = new String[tableSize];
+		this.stems = new String[tableSize];
+		this.hashes = new int[tableSize];
+		this.mask = tableSize - 1;
+	}
+
+	public String stem(String token) {
+		int hash = token.hashCode();
+		int slot = hash & mask;
+		for (String t = tokens[slot]; t != null; t = tokens[slot = (slot + 1) & mask]) {
+			if (hashes[slot] == hash && t.equals(token)) {
+				hits++;
+				return stems[slot];
+			}
+		}
+		misses++;
+		for (int i = 0; i < token.length(); i++)
+			stemmer.add(token.charAt(i));
+		return remember(slot, hash, token);
+	}
+
+	public String stem(char[] chars, int start, int length) {
+		// Same hash as String.hashCode, so both lookups find the same slot.
+		int hash = 0;
+		for (int i = start; i < start + length; i++)
+			hash = 31 * hash + chars[i];
+		int slot = hash & mask;
+		for (String t = tokens[slot]; t != null; t = tokens[slot = (slot + 1) & mask]) {
+			if (hashes[slot] == hash && matches(t, chars, start, length)) {
+				hits++;
+				return stems[slot];
+			}
+		}
+		misses++;
+		for (int i = start; i < start + length; i++)
+			stemmer.add(chars[i]);
+		return remember(slot, hash, size < capacity ? new String(chars, start, length) : null);
+	}
+
+	// Stems the word already added to the stemmer and caches it under token in
+	// the empty slot, if there is still room.
+	private String remember(int slot, int hash, String token) {
+		stemmer.stem();
+		String stem = stemmer.toString();
+		if (size < capacity && token != null) {
+			tokens[slot] = token;
+			stems[slot] = stem;
+			hashes[slot] = hash;
+			size++;
+		}
+		return stem;
+	}
+
+	private static boolean matches(String t, char[] chars, int start, int length) {
+		if (t.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (t.charAt(i) != chars[start + i])
+				return false;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double) hits / lookups;
+	}
+}
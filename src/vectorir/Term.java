@@ -1,19 +1,35 @@
 package vectorir;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
 
 public class Term implements java.io.Serializable {
 
-	private static final long serialVersionUID = -9215956026571055086L;
-	private int docFreq = 1;
-	private Map<Integer, TermDoc> postings = new HashMap<Integer, TermDoc>();
+	private static final long serialVersionUID = -2787306462945127370L;
+	private int id = -1;
+	private int docFreq = 0;
 	private String string;
 
+	// Postings are kept in parallel primitive arrays sorted by document id.
+	// The positions of each posting are stored as a block of variable-byte
+	// encoded gaps; positionStarts[i] is the offset of the i-th block in
+	// positions and positionStarts[docFreq] marks the end of the last block.
+	// weights[i] holds the tf-idf weight of the posting divided by the
+	// document's Euclidean length, so a cosine score is a sum of products.
+	private int[] docIds = new int[1];
+	private int[] freqs = new int[1];
+	private float[] weights = new float[1];
+	private int[] positionStarts = new int[2];
+	private byte[] positions = new byte[4];
+	private int lastPosition;
+	private float maxWeight = 0;
+	private float minWeight = 0;
+
 	public Term(String term, Document doc, int pos) {
-		postings.put(doc.getId(), new TermDoc(this, doc, pos));
 		this.string = term;
+		foundAgain(doc, pos);
 	}
 
 	public Term(int zero) {
@@ -21,52 +37,301 @@ public class Term implements java.io.Serializable {
 		this.string = "";
 	}
 
+	// Wraps postings that were already built, e.g. read back from an index
+	// file.
+	Term(String term, int docFreq, int[] docIds, int[] freqs, float[] weights, int[] positionStarts,
+			byte[] positions, float maxWeight, float minWeight) {
+		this.string = term;
+		this.docFreq = docFreq;
+		this.docIds = docIds;
+		this.freqs = freqs;
+		this.weights = weights;
+		this.positionStarts = positionStarts;
+		this.positions = positions;
+		this.maxWeight = maxWeight;
+		this.minWeight = minWeight;
+		if (docFreq > 0) {
+			int[] last = decodePositions(positions, positionStarts[docFreq - 1], freqs[docFreq - 1]);
+			this.lastPosition = last[last.length - 1];
+		}
+	}
+
 	public void foundAgain(Document doc, int pos) {
 		// If this is the first time the term has been found in a particular
 		// document, add the id to the postings, and increment the document
 		// frequency.
 		int docId = doc.getId();
-		if (!postings.containsKey(docId)) {
-			postings.put(docId, new TermDoc(this, doc, pos));
-			docFreq++;
-		} else
-			postings.get(docId).recordPosition(doc, pos);
+		int i;
+		if (docFreq > 0 && docIds[docFreq - 1] == docId)
+			i = docFreq - 1;
+		else if (docFreq == 0 || docIds[docFreq - 1] < docId)
+			i = appendPosting(docId);
+		else {
+			i = Arrays.binarySearch(docIds, 0, docFreq, docId);
+			if (i < 0)
+				i = insertPosting(-(i + 1), docId);
+		}
+		recordPosition(i, pos);
+		doc.registerTermFreq(freqs[i]);
 	}
 
-	public int getDocFreq() {
-		return docFreq;
+	// The term's number in its Corpus, or -1 if it belongs to none.
+	public int getId() {
+		return id;
+	}
+
+	void setId(int id) {
+		this.id = id;
 	}
 
-	public Map<Integer, TermDoc> getPostings() {
-		return postings;
+	public int getDocFreq() {
+		return docFreq;
 	}
 
 	public String getString() {
 		return string;
 	}
 
-	public class TermDoc implements java.io.Serializable {
+	public PostingsIterator iterator() {
+		return new PostingsIterator(docIds, freqs, weights, positionStarts, positions, docFreq);
+	}
+
+	public void setWeight(int docId, double weight) {
+		int i = Arrays.binarySearch(docIds, 0, docFreq, docId);
+		if (i >= 0) {
+			weights[i] = (float) weight;
+			maxWeight = Math.max(maxWeight, weights[i]);
+			minWeight = Math.min(minWeight, weights[i]);
+		}
+	}
+
+	// Set the weight of every posting at once, in document id order.
+	public void setWeights(float[] weights) {
+		if (weights.length != docFreq)
+			throw new IllegalArgumentException(weights.length + " weights for " + docFreq + " postings");
+		System.arraycopy(weights, 0, this.weights, 0, docFreq);
+		maxWeight = 0;
+		minWeight = 0;
+		for (float w : weights) {
+			maxWeight = Math.max(maxWeight, w);
+			minWeight = Math.min(minWeight, w);
+		}
+	}
+
+	// Bounds on the posting weights, used to skip documents that cannot make
+	// it into the top k. They may be loose but never too tight.
+	public float getMaxWeight() {
+		return maxWeight;
+	}
+
+	public float getMinWeight() {
+		return minWeight;
+	}
+
+	public boolean contains(int docId) {
+		return Arrays.binarySearch(docIds, 0, docFreq, docId) >= 0;
+	}
+
+	public int getFreq(int docId) {
+		int i = Arrays.binarySearch(docIds, 0, docFreq, docId);
+		return i < 0 ? 0 : freqs[i];
+	}
+
+	public int[] getPositions(int docId) {
+		int i = Arrays.binarySearch(docIds, 0, docFreq, docId);
+		if (i < 0)
+			return new int[0];
+		return decodePositions(positions, positionStarts[i], freqs[i]);
+	}
+
+	public int[] getDocIds() {
+		return Arrays.copyOf(docIds, docFreq);
+	}
+
+	// Fold in the postings of the same term from a disjoint set of documents.
+	public void merge(Term other) {
+		int n = docFreq + other.docFreq;
+		int[] mergedIds = new int[n];
+		int[] mergedFreqs = new int[n];
+		float[] mergedWeights = new float[n];
+		int[] mergedStarts = new int[n + 1];
+		byte[] mergedPositions = new byte[positionStarts[docFreq] + other.positionStarts[other.docFreq]];
 
-		private static final long serialVersionUID = 4956168170750177461L;
-		private int freq = 0;
-		private ArrayList<Integer> positions = new ArrayList<Integer>();
+		// Position blocks are self-contained, so they are copied unchanged.
+		int i = 0, j = 0, offset = 0;
+		for (int k = 0; k < n; k++) {
+			Term from;
+			int index;
+			if (j == other.docFreq || (i < docFreq && docIds[i] < other.docIds[j])) {
+				from = this;
+				index = i++;
+			} else if (i == docFreq || other.docIds[j] < docIds[i]) {
+				from = other;
+				index = j++;
+			} else
+				throw new IllegalArgumentException("Document " + docIds[i] + " is in both postings of " + string);
 
-		public TermDoc(Term t, Document doc, int pos) {
-			recordPosition(doc, pos);
+			mergedIds[k] = from.docIds[index];
+			mergedFreqs[k] = from.freqs[index];
+			mergedWeights[k] = from.weights[index];
+			int length = from.positionStarts[index + 1] - from.positionStarts[index];
+			System.arraycopy(from.positions, from.positionStarts[index], mergedPositions, offset, length);
+			mergedStarts[k] = offset;
+			offset += length;
 		}
+		mergedStarts[n] = offset;
 
-		public void recordPosition(Document doc, int pos) {
-			this.freq++;
-			this.positions.add(pos);
-			doc.registerTermFreq(this.freq);
+		if (other.docFreq > 0 && (docFreq == 0 || other.docIds[other.docFreq - 1] > docIds[docFreq - 1]))
+			lastPosition = other.lastPosition;
+		maxWeight = Math.max(maxWeight, other.maxWeight);
+		minWeight = Math.min(minWeight, other.minWeight);
+		docIds = mergedIds;
+		freqs = mergedFreqs;
+		weights = mergedWeights;
+		positionStarts = mergedStarts;
+		positions = mergedPositions;
+		docFreq = n;
+	}
+
+	// A copy of the term without the postings of the given documents.
+	Term without(BitSet deleted) {
+		int n = 0, bytes = 0;
+		for (int i = 0; i < docFreq; i++)
+			if (!deleted.get(docIds[i])) {
+				n++;
+				bytes += positionStarts[i + 1] - positionStarts[i];
+			}
+		int[] keptIds = new int[n];
+		int[] keptFreqs = new int[n];
+		float[] keptWeights = new float[n];
+		int[] keptStarts = new int[n + 1];
+		byte[] keptPositions = new byte[bytes];
+		for (int i = 0, k = 0; i < docFreq; i++) {
+			if (deleted.get(docIds[i]))
+				continue;
+			keptIds[k] = docIds[i];
+			keptFreqs[k] = freqs[i];
+			keptWeights[k] = weights[i];
+			int length = positionStarts[i + 1] - positionStarts[i];
+			System.arraycopy(positions, positionStarts[i], keptPositions, keptStarts[k], length);
+			keptStarts[k + 1] = keptStarts[k] + length;
+			k++;
 		}
+		Term t = new Term(string, n, keptIds, keptFreqs, keptWeights, keptStarts, keptPositions, maxWeight, minWeight);
+		t.setId(id);
+		return t;
+	}
 
-		public ArrayList<Integer> getPositions() {
-			return positions;
+	// Shrink the postings arrays to their exact sizes once indexing is done.
+	public void trim() {
+		docIds = Arrays.copyOf(docIds, docFreq);
+		freqs = Arrays.copyOf(freqs, docFreq);
+		weights = Arrays.copyOf(weights, docFreq);
+		positionStarts = Arrays.copyOf(positionStarts, docFreq + 1);
+		positions = Arrays.copyOf(positions, positionStarts[docFreq]);
+	}
+
+	private int appendPosting(int docId) {
+		if (docFreq == docIds.length) {
+			int capacity = docFreq + (docFreq >> 1) + 1;
+			docIds = Arrays.copyOf(docIds, capacity);
+			freqs = Arrays.copyOf(freqs, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+			positionStarts = Arrays.copyOf(positionStarts, capacity + 1);
 		}
+		docIds[docFreq] = docId;
+		freqs[docFreq] = 0;
+		weights[docFreq] = 0;
+		positionStarts[docFreq + 1] = positionStarts[docFreq];
+		return docFreq++;
+	}
 
-		public int getFreq() {
-			return freq;
+	private int insertPosting(int i, int docId) {
+		// Out of order document ids are rare, so make room by shifting the
+		// tail of the postings rather than complicating the common case.
+		appendPosting(docId);
+		System.arraycopy(docIds, i, docIds, i + 1, docFreq - 1 - i);
+		System.arraycopy(freqs, i, freqs, i + 1, docFreq - 1 - i);
+		System.arraycopy(weights, i, weights, i + 1, docFreq - 1 - i);
+		System.arraycopy(positionStarts, i, positionStarts, i + 1, docFreq - i);
+		docIds[i] = docId;
+		freqs[i] = 0;
+		weights[i] = 0;
+		return i;
+	}
+
+	private void recordPosition(int i, int pos) {
+		int start = positionStarts[i];
+		int end = positionStarts[i + 1];
+		if (i == docFreq - 1 && (freqs[i] == 0 || pos > lastPosition)) {
+			// Common case: positions arrive in order for the newest posting.
+			int gap = freqs[i] == 0 ? pos : pos - lastPosition;
+			ensurePositionCapacity(end + 5);
+			positionStarts[i + 1] = encode(positions, end, gap);
+			lastPosition = pos;
+		} else {
+			// Otherwise re-encode the whole block with the position merged in.
+			int[] block = decodePositions(positions, start, freqs[i]);
+			int[] merged = new int[block.length + 1];
+			int k = 0;
+			while (k < block.length && block[k] < pos) {
+				merged[k] = block[k];
+				k++;
+			}
+			merged[k] = pos;
+			System.arraycopy(block, k, merged, k + 1, block.length - k);
+			byte[] encoded = new byte[5 * merged.length];
+			int length = 0, previous = 0;
+			for (int p : merged) {
+				length = encode(encoded, length, p - previous);
+				previous = p;
+			}
+			int shift = length - (end - start);
+			ensurePositionCapacity(positionStarts[docFreq] + shift);
+			System.arraycopy(positions, end, positions, end + shift, positionStarts[docFreq] - end);
+			System.arraycopy(encoded, 0, positions, start, length);
+			for (int j = i + 1; j <= docFreq; j++)
+				positionStarts[j] += shift;
+			if (i == docFreq - 1)
+				lastPosition = merged[merged.length - 1];
+		}
+		freqs[i]++;
+	}
+
+	private void ensurePositionCapacity(int capacity) {
+		if (capacity > positions.length)
+			positions = Arrays.copyOf(positions, Math.max(capacity, positions.length + (positions.length >> 1)));
+	}
+
+	// Write value as a variable-byte integer, returning the next free offset.
+	static int encode(byte[] buffer, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[offset++] = (byte) value;
+		return offset;
+	}
+
+	static int[] decodePositions(byte[] buffer, int offset, int count) {
+		int[] result = new int[count];
+		int previous = 0;
+		for (int n = 0; n < count; n++) {
+			int value = 0, shift = 0;
+			byte b;
+			do {
+				b = buffer[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			previous += value;
+			result[n] = previous;
 		}
+		return result;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		trim();
+		out.defaultWriteObject();
 	}
 }
@@ -0,0 +1,164 @@
+package vectorir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Splits text into lower case tokens of the letters a-z in a single pass.
+// White space, dashes and slashes separate tokens and every other character
+// is dropped, so "U.S.-based" gives "us" and "based". Text can be fed in
+// pieces as it arrives from a SAX characters callback; a token may span two
+// pieces. Tokens are kept as slices of one reusable char buffer, so nothing
+// is allocated per token until a String is asked for.
+//
+// In query mode a double quote is also a separator and is emitted as a token
+// of its own, so Query can find the phrases, and a proximity marker such as
+// ~3 is kept as a token too.
+
+public class Tokenizer {
+
+	public static final String QUOTE = "\"";
+	public static final char SLOP = '~';
+
+	private final boolean queryMode;
+	private char[] chars = new char[1024];
+	private int length = 0;
+	private int[] starts = new int[128];
+	private int[] ends = new int[128];
+	private int size = 0;
+	private boolean inToken = false;
+	private boolean inSlop = false;
+
+	public Tokenizer() {
+		this(false);
+	}
+
+	public Tokenizer(boolean queryMode) {
+		this.queryMode = queryMode;
+	}
+
+	// Forget all tokens, keeping the buffers for the next document.
+	public void reset() {
+		length = 0;
+		size = 0;
+		inToken = false;
+		inSlop = false;
+	}
+
+	public void feed(char[] ch, int start, int count) {
+		for (int i = start; i < start + count; i++)
+			feed(ch[i]);
+	}
+
+	public void feed(String s) {
+		for (int i = 0; i < s.length(); i++)
+			feed(s.charAt(i));
+	}
+
+	private void feed(char c) {
+		if (inSlop) {
+			if (c >= '0' && c <= '9') {
+				append(c);
+				return;
+			}
+			endToken();
+		}
+		if (c >= 'a' && c <= 'z')
+			append(c);
+		else if (c >= 'A' && c <= 'Z')
+			append((char) (c + ('a' - 'A')));
+		else if (isSeparator(c))
+			endToken();
+		else if (c == '"' && queryMode) {
+			endToken();
+			append(c);
+			endToken();
+		} else if (c == SLOP && queryMode) {
+			endToken();
+			append(c);
+			inSlop = true;
+		}
+	}
+
+	private static boolean isSeparator(char c) {
+		switch (c) {
+		case ' ':
+		case '\t':
+		case '\n':
+		case '\u000B':
+		case '\f':
+		case '\r':
+		case '-':
+		case '/':
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void append(char c) {
+		if (!inToken) {
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, 2 * size);
+				ends = Arrays.copyOf(ends, 2 * size);
+			}
+			starts[size] = length;
+			inToken = true;
+		}
+		if (length == chars.length)
+			chars = Arrays.copyOf(chars, 2 * length);
+		chars[length++] = c;
+	}
+
+	private void endToken() {
+		if (inToken) {
+			ends[size++] = length;
+			inToken = false;
+		}
+		inSlop = false;
+	}
+
+	// Close the token in progress, if any. Call once the text has ended.
+	public void finish() {
+		endToken();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// The shared buffer holding every token; token i is the slice from
+	// start(i) of length(i). Valid only until the next feed or reset.
+	public char[] buffer() {
+		return chars;
+	}
+
+	public int start(int i) {
+		return starts[i];
+	}
+
+	public int length(int i) {
+		return ends[i] - starts[i];
+	}
+
+	public String getToken(int i) {
+		return new String(chars, starts[i], ends[i] - starts[i]);
+	}
+
+	public ArrayList<String> getTokens() {
+		ArrayList<String> tokens = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++)
+			tokens.add(getToken(i));
+		return tokens;
+	}
+
+	// Tokenize a whole string at once.
+	public String[] tokenize(String text) {
+		reset();
+		feed(text);
+		finish();
+		String[] tokens = new String[size];
+		for (int i = 0; i < size; i++)
+			tokens[i] = getToken(i);
+		return tokens;
+	}
+}
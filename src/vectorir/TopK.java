@@ -0,0 +1,123 @@
+package vectorir;
+
+import java.util.Arrays;
+
+// Keeps the k best (id, score) pairs offered to it in a bounded min-heap, so
+// selecting the top k of n scores costs O(n log k) instead of a full sort.
+// Ties on score go to the lower id, which keeps rankings stable from run to
+// run, and NaN scores rank last. Once the results are read by rank no more
+// pairs can be offered.
+
+public class TopK {
+
+	private final int k;
+	private final int[] ids;
+	private final double[] scores;
+	private int size = 0;
+	private boolean sorted = false;
+
+	public TopK(int k) {
+		this.k = k;
+		this.ids = new int[k];
+		this.scores = new double[k];
+	}
+
+	// Returns true if the pair made it into the current top k.
+	public boolean offer(int id, double score) {
+		if (sorted)
+			throw new IllegalStateException("TopK has already been sorted");
+		if (size < k) {
+			ids[size] = id;
+			scores[size] = score;
+			siftUp(size++);
+			return true;
+		}
+		if (k == 0 || !worse(ids[0], scores[0], id, score))
+			return false;
+		ids[0] = id;
+		scores[0] = score;
+		siftDown(0, size);
+		return true;
+	}
+
+	public boolean isFull() {
+		return size == k;
+	}
+
+	// The score a new pair has to beat once the heap is full.
+	public double threshold() {
+		return isFull() && k > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getId(int rank) {
+		sort();
+		return ids[rank];
+	}
+
+	public double getScore(int rank) {
+		sort();
+		return scores[rank];
+	}
+
+	public int[] getIds() {
+		sort();
+		return Arrays.copyOf(ids, size);
+	}
+
+	private void sort() {
+		if (sorted)
+			return;
+		// Heap sort: repeatedly move the worst remaining pair to the end.
+		for (int end = size - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+		sorted = true;
+	}
+
+	// True if (idA, scoreA) ranks below (idB, scoreB). NaN ranks below every
+	// number, so the order stays total and a NaN score cannot block a heap.
+	private static boolean worse(int idA, double scoreA, int idB, double scoreB) {
+		boolean nanA = scoreA != scoreA, nanB = scoreB != scoreB;
+		if (nanA || nanB)
+			return nanA && (!nanB || idA > idB);
+		return scoreA < scoreB || (scoreA == scoreB && idA > idB);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!worse(ids[i], scores[i], ids[parent], scores[parent]))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int end) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= end)
+				break;
+			if (child + 1 < end && worse(ids[child + 1], scores[child + 1], ids[child], scores[child]))
+				child++;
+			if (!worse(ids[child], scores[child], ids[i], scores[i]))
+				break;
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int id = ids[a];
+		ids[a] = ids[b];
+		ids[b] = id;
+		double score = scores[a];
+		scores[a] = scores[b];
+		scores[b] = score;
+	}
+}
@@ -0,0 +1,168 @@
+package vectorir;
+
+// How much a term weighs in a document and in a query. A posting's weight
+// depends only on its frequency, the term's document frequency and the
+// DocumentStats gathered when the index was weighed, so changing scheme
+// means weighing postings again, never parsing the collection again. The
+// weights are worked out when postings are weighed or read, leaving a
+// multiply-add per posting to scoring whichever scheme is used.
+//
+// A document's score is the dot product of its posting weights with the
+// query weights, divided by the length of the query. That is the cosine for
+// the cosine-normalized schemes; for the others the division scales every
+// document of a query alike and leaves the ranking alone.
+
+public abstract class WeightingScheme {
+
+	// Augmented tf, 0.4 + 0.6 tf / max tf, times idf, cosine normalized.
+	public static final WeightingScheme TFIDF = new Cosine("tfidf", 0) {
+		double tf(int freq, int maxFreq) {
+			return Corpus.tf(freq, maxFreq);
+		}
+	};
+
+	// Sublinear tf, 1 + ln tf, times idf, cosine normalized.
+	public static final WeightingScheme LOG_TF = new Cosine("logtf", 1) {
+		double tf(int freq, int maxFreq) {
+			return 1 + Math.log(freq);
+		}
+	};
+
+	// Singhal, Buckley and Mitra's pivoted unique normalization (Lnu.ltc).
+	public static final WeightingScheme PIVOTED = new Pivoted(0.2);
+
+	// Okapi BM25.
+	public static final WeightingScheme BM25 = new Bm25(1.2, 0.75);
+
+	private static final WeightingScheme[] SCHEMES = { TFIDF, LOG_TF, PIVOTED, BM25 };
+
+	// The cosine-normalized schemes, in the order their document lengths are
+	// stored.
+	static final Cosine[] COSINE = { (Cosine) TFIDF, (Cosine) LOG_TF };
+
+	private final String name;
+
+	WeightingScheme(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String toString() {
+		return name;
+	}
+
+	public static WeightingScheme forName(String name) {
+		for (WeightingScheme scheme : SCHEMES)
+			if (scheme.name.equals(name))
+				return scheme;
+		throw new IllegalArgumentException("Unknown weighting scheme " + name);
+	}
+
+	public static WeightingScheme[] getSchemes() {
+		return SCHEMES.clone();
+	}
+
+	// The factor of a term's postings for being found in docFreq of numDocs
+	// documents.
+	public double idf(int numDocs, int docFreq) {
+		return Corpus.idf(numDocs, docFreq);
+	}
+
+	// The weight of a query term, or phrase, found once in the query.
+	public abstract double queryWeight(int numDocs, int docFreq);
+
+	// The weight of a posting with the given frequency, of a term whose idf
+	// is given, in a document described by stats.
+	public abstract double weight(int freq, double idf, int docId, DocumentStats stats);
+
+	// Where DocumentStats keeps the document lengths under this scheme, or
+	// -1 if it needs none.
+	int lengthSlot() {
+		return -1;
+	}
+
+	// The cosine-normalized schemes: a tf factor times idf, divided by the
+	// length of the document's vector of such weights. Those lengths are
+	// found for every scheme at once, when the index is weighed.
+	abstract static class Cosine extends WeightingScheme {
+		private final int slot;
+
+		Cosine(String name, int slot) {
+			super(name);
+			this.slot = slot;
+		}
+
+		abstract double tf(int freq, int maxFreq);
+
+		public double queryWeight(int numDocs, int docFreq) {
+			return tf(1, 1) * idf(numDocs, docFreq);
+		}
+
+		public double weight(int freq, double idf, int docId, DocumentStats stats) {
+			double weight = tf(freq, stats.getMaxFreq(docId)) * idf;
+			return weight / stats.getLength(slot, docId);
+		}
+
+		int lengthSlot() {
+			return slot;
+		}
+	}
+
+	// Log tf damped by the document's average tf, divided by a length that
+	// pivots on the average number of distinct terms, so that long documents
+	// are not penalized as heavily as by the cosine. idf is on the query side
+	// only.
+	static class Pivoted extends WeightingScheme {
+		private final double slope;
+
+		Pivoted(double slope) {
+			super("pivoted");
+			this.slope = slope;
+		}
+
+		public double idf(int numDocs, int docFreq) {
+			return 1;
+		}
+
+		public double queryWeight(int numDocs, int docFreq) {
+			return Corpus.idf(numDocs, docFreq);
+		}
+
+		public double weight(int freq, double idf, int docId, DocumentStats stats) {
+			int terms = stats.getNumTerms(docId);
+			double averageTf = stats.getNumTokens(docId) / (double) terms;
+			double pivot = (1 - slope) * stats.getAverageTerms() + slope * terms;
+			return idf * (1 + Math.log(freq)) / (1 + Math.log(averageTf)) / pivot;
+		}
+	}
+
+	// Saturating tf, with a document's length in tokens measured against the
+	// average, times the Robertson-Sparck Jones idf. Each query term counts
+	// once.
+	static class Bm25 extends WeightingScheme {
+		private final double k1;
+		private final double b;
+
+		Bm25(double k1, double b) {
+			super("bm25");
+			this.k1 = k1;
+			this.b = b;
+		}
+
+		public double idf(int numDocs, int docFreq) {
+			return Math.log(1 + (numDocs - docFreq + 0.5) / (docFreq + 0.5));
+		}
+
+		public double queryWeight(int numDocs, int docFreq) {
+			return 1;
+		}
+
+		public double weight(int freq, double idf, int docId, DocumentStats stats) {
+			double norm = k1 * (1 - b + b * stats.getNumTokens(docId) / stats.getAverageTokens());
+			return idf * freq * (k1 + 1) / (freq + norm);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package vectorir;
+
+import java.io.File;
+import java.io.IOException;
+
+// Checks that a SegmentedCorpus refuses the changes it cannot take: writes
+// once it has been closed, and the inherited Corpus methods that would build
+// an index in memory. There is no test framework in this tree, so it runs as
+// a program, from the directory the classes were compiled to:
+//
+//   javac -d out src/vectorir/*.java test/vectorir/*.java
+//   java -cp out vectorir.SegmentedCorpusTest
+
+public class SegmentedCorpusTest {
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		File dir = File.createTempFile("segments", "");
+		dir.delete();
+		try {
+			writesAfterClose(dir.getPath() + "/closed");
+			inheritedMutatorsRejected(dir.getPath() + "/frozen");
+		} finally {
+			deleteAll(dir);
+		}
+		if (failures > 0) {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+
+	private static void writesAfterClose(String dir) throws Exception {
+		final SegmentedCorpus corpus = new SegmentedCorpus(dir, 1);
+		corpus.addDocuments(batch(1, "crude oil prices rose"));
+		corpus.addDocuments(batch(2, "wheat and corn exports"));
+		corpus.close();
+
+		expectIllegalState("addDocuments after close", new Action() {
+			void run() throws Exception {
+				corpus.addDocuments(batch(3, "gold prices fell"));
+			}
+		});
+		expectIllegalState("deleteDocument after close", new Action() {
+			void run() throws Exception {
+				corpus.deleteDocument(1);
+			}
+		});
+		expectIllegalState("merge after close", new Action() {
+			void run() throws Exception {
+				corpus.merge();
+			}
+		});
+		check("documents unchanged after close", corpus.getNumDocuments() == 2 && corpus.getNumSegments() == 2);
+
+		// A closed corpus can still be searched.
+		Query q = new Query(corpus);
+		q.setVerbose(false);
+		q.prepareQuery("oil");
+		q.executeQuery(10);
+		check("search after close", q.topK(10).size() == 1 && q.topK(10).getId(0) == 1);
+
+		// Reopening gives a corpus that takes changes again.
+		SegmentedCorpus reopened = new SegmentedCorpus(dir, 1);
+		check("delete after reopening", reopened.deleteDocument(1) && reopened.getNumDocuments() == 1);
+		reopened.close();
+	}
+
+	private static void inheritedMutatorsRejected(String dir) throws Exception {
+		final SegmentedCorpus corpus = new SegmentedCorpus(dir, 1);
+		corpus.addDocuments(batch(1, "crude oil prices rose"));
+		expectIllegalState("addDocument", new Action() {
+			void run() {
+				corpus.addDocument(new Document(5));
+			}
+		});
+		expectIllegalState("indexDocument", new Action() {
+			void run() {
+				Tokenizer tokens = new Tokenizer();
+				tokens.feed("copper");
+				tokens.finish();
+				corpus.indexDocument(new Document(5), tokens, false);
+			}
+		});
+		expectIllegalState("addTerm", new Action() {
+			void run() {
+				corpus.addTerm("copper", new Document(5), 0);
+			}
+		});
+		expectIllegalState("trimTerms", new Action() {
+			void run() {
+				corpus.trimTerms();
+			}
+		});
+		expectIllegalState("calculateTermWeights", new Action() {
+			void run() {
+				corpus.calculateTermWeights(1);
+			}
+		});
+		expectIllegalState("merge(Corpus)", new Action() {
+			void run() {
+				corpus.merge(batch(5, "copper"));
+			}
+		});
+		check("documents unchanged by rejected calls", corpus.getNumDocuments() == 1 && !corpus.containsDocument(5));
+		corpus.close();
+	}
+
+	// An in-memory corpus of one document, as IndexingPipeline would parse it.
+	private static Corpus batch(int docId, String text) {
+		Corpus c = new Corpus();
+		Document doc = new Document(docId);
+		doc.setTitle(text);
+		Tokenizer tokens = new Tokenizer();
+		tokens.feed(text);
+		tokens.finish();
+		c.indexDocument(doc, tokens, false);
+		return c;
+	}
+
+	private abstract static class Action {
+		abstract void run() throws Exception;
+	}
+
+	private static void expectIllegalState(String name, Action action) {
+		try {
+			action.run();
+			check(name + " throws IllegalStateException", false);
+		} catch (IllegalStateException e) {
+			check(name + " throws IllegalStateException", true);
+		} catch (Exception e) {
+			check(name + " throws IllegalStateException, not " + e, false);
+		}
+	}
+
+	private static void check(String name, boolean ok) {
+		System.out.println((ok ? "ok   " : "FAIL ") + name);
+		if (!ok)
+			failures++;
+	}
+
+	private static void deleteAll(File f) throws IOException {
+		File[] children = f.listFiles();
+		if (children != null)
+			for (File child : children)
+				deleteAll(child);
+		if (f.exists() && !f.delete())
+			throw new IOException("Cannot delete " + f);
+	}
+}